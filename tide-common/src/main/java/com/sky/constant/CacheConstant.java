@@ -0,0 +1,53 @@
+package com.sky.constant;
+
+/**
+ * 缓存相关常量
+ */
+public class CacheConstant {
+
+    //用户端商品缓存key前缀，规则：dish_分类id
+    public static final String DISH_KEY_PREFIX = "dish_";
+
+    //商品缓存标签，记录所有已写入的dish_分类id缓存key，用于替代keys命令
+    public static final String DISH_KEY_TAG = "cache:tag:dish";
+
+    //商品缓存标签已补登记过的标记
+    public static final String DISH_KEY_TAG_BACKFILLED = "cache:tag:dish:backfilled";
+
+    //缓存失效广播频道
+    public static final String CACHE_INVALIDATE_CHANNEL = "sky:cache:invalidate";
+
+    //菜单快照版本号
+    public static final String MENU_SNAPSHOT_VERSION_KEY = "menu:snapshot:version";
+
+    //菜单快照重建广播频道
+    public static final String MENU_SNAPSHOT_CHANNEL = "sky:menu:snapshot";
+
+    //接口响应缓存key前缀，规则：resp:分组:参数
+    public static final String RESPONSE_KEY_PREFIX = "resp:";
+
+    //接口响应缓存标签前缀，规则：resp:tag:分组
+    public static final String RESPONSE_TAG_PREFIX = "resp:tag:";
+
+    //接口响应缓存失效广播频道
+    public static final String RESPONSE_INVALIDATE_CHANNEL = "sky:resp:invalidate";
+
+    //响应缓存分组
+    public static final String RESPONSE_SETMEAL = "setmeal";
+    public static final String RESPONSE_CATEGORY = "category";
+
+    //工作台计数器，hash结构，field规则：类型:状态，例如dish:1、order:5
+    public static final String WORKSPACE_COUNTER_KEY = "workspace:counter";
+
+    //集群定时任务锁key前缀，规则：task:lock:任务名
+    public static final String TASK_LOCK_PREFIX = "task:lock:";
+
+    //集群定时任务最小执行间隔的租约key前缀，规则：task:lease:任务名
+    public static final String TASK_LEASE_PREFIX = "task:lease:";
+
+    //集群定时任务执行统计，hash结构，规则：task:stats:任务名
+    public static final String TASK_STATS_PREFIX = "task:stats:";
+
+    //失效消息中表示清空全部缓存的标记
+    public static final String INVALIDATE_ALL = "*";
+}
@@ -31,4 +31,12 @@ public class MessageConstant {
     public static final String ORDER_CANCEL_FAIL_FOR_DELIVERING = "派送中订单无法取消";
     public static final String ORDER_OPERATION_FAIL = "订单操作失败";
     public static final String REQUEST_FREQUENT = "请求过于频繁";
+    public static final String REQUEST_PROCESSING = "请求正在处理中，请勿重复提交";
+    public static final String IDEMPOTENCY_KEY_INVALID = "幂等令牌不合法";
+    public static final String REPORT_DATE_RANGE_INVALID = "统计日期范围不合法";
+    public static final String REPORT_EXPORT_BUSY = "导出任务过多，请稍后再试";
+    public static final String REPORT_EXPORT_NOT_FOUND = "导出任务不存在或已过期";
+    public static final String REPORT_EXPORT_NOT_READY = "导出任务尚未完成";
+    public static final String ORDER_CURSOR_INVALID = "分页游标不合法";
+    public static final String SERVER_BUSY = "服务繁忙，请稍后再试";
 }
@@ -0,0 +1,32 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.cart")
+@Data
+public class CartProperties {
+
+    /**
+     * 是否开启异步回写，开启后购物车变更会定期写回shopping_cart表
+     */
+    private boolean writeBehind = false;
+
+    /**
+     * 回写间隔，单位毫秒
+     */
+    private long flushIntervalMs = 5000;
+
+    /**
+     * 每次回写最多处理的用户数量
+     */
+    private int flushBatchSize = 200;
+
+    /**
+     * 购物车在Redis中的过期时间，单位天，每次修改后重新计算
+     */
+    private long expireDays = 7;
+
+}
@@ -0,0 +1,57 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "sky.concurrency-limit")
+@Data
+public class ConcurrencyLimitProperties {
+
+    /**
+     * 是否开启并发限制
+     */
+    private boolean enabled = true;
+
+    /**
+     * 每个接口分组初始的并发上限
+     */
+    private int initialLimit = 20;
+
+    /**
+     * 并发上限的最小值
+     */
+    private int minLimit = 5;
+
+    /**
+     * 并发上限的最大值
+     */
+    private int maxLimit = 200;
+
+    /**
+     * 支付回调和管理端订单接口的最小并发上限
+     */
+    private int priorityMinLimit = 20;
+
+    /**
+     * 请求耗时超过该值视为过载，单位毫秒
+     */
+    private long latencyThresholdMs = 500;
+
+    /**
+     * 过载时并发上限乘以该比例
+     */
+    private double backoffRatio = 0.9;
+
+    /**
+     * 耗时不参与过载判断的接口，导出、下载和调用外部接口的请求本身就慢
+     */
+    private List<String> latencyExcludePatterns = new ArrayList<>(Arrays.asList(
+            "/admin/report/export", "/admin/report/export/*/download", "/user/user/login"));
+
+}
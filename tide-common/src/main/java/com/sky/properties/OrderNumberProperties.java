@@ -0,0 +1,22 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-number")
+@Data
+public class OrderNumberProperties {
+
+    /**
+     * 机器id(0-1023)，不配置时从Redis租用
+     */
+    private Long workerId;
+
+    /**
+     * Redis中机器id租约的有效期，单位秒
+     */
+    private long leaseSeconds = 60;
+
+}
@@ -0,0 +1,32 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-timeout")
+@Data
+public class OrderTimeoutProperties {
+
+    /**
+     * 下单后未支付自动取消的时间，单位分钟
+     */
+    private long paymentTimeoutMinutes = 15;
+
+    /**
+     * 延时队列轮询间隔，单位毫秒
+     */
+    private long pollIntervalMs = 1000;
+
+    /**
+     * 每次从延时队列中最多取出的订单数量
+     */
+    private int batchSize = 100;
+
+    /**
+     * 取消失败后重新放回队列的延迟，单位秒
+     */
+    private long retryDelaySeconds = 30;
+
+}
@@ -0,0 +1,27 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.rate-limit")
+@Data
+public class RateLimitProperties {
+
+    /**
+     * 从Redis租借的令牌在本地的有效期，单位毫秒，过期未用完的令牌作废
+     */
+    private long leaseMillis = 1000;
+
+    /**
+     * Redis调用失败后改用本地限流的时长，单位毫秒，到期后再尝试Redis
+     */
+    private long redisRetryMillis = 1000;
+
+    /**
+     * 本地最多保存的限流key数量，包括租借的令牌和本地令牌桶
+     */
+    private long localMaximumSize = 10000;
+
+}
@@ -0,0 +1,42 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.report")
+@Data
+public class ReportProperties {
+
+    /**
+     * 每晚根据原始数据重算最近几天的汇总数据，覆盖增量统计可能出现的偏差
+     */
+    private int reconcileDays = 3;
+
+    /**
+     * 导出报表允许的最大天数
+     */
+    private int maxExportDays = 1096;
+
+    /**
+     * 后台导出线程数
+     */
+    private int exportThreads = 2;
+
+    /**
+     * 等待导出的任务上限，超出后直接拒绝
+     */
+    private int exportQueueCapacity = 20;
+
+    /**
+     * 导出文件保存目录，为空时使用系统临时目录
+     */
+    private String exportDir;
+
+    /**
+     * 导出文件保留时间，单位分钟，过期后删除文件和任务
+     */
+    private long exportRetentionMinutes = 30;
+
+}
@@ -0,0 +1,22 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.response-cache")
+@Data
+public class ResponseCacheProperties {
+
+    /**
+     * 本地缓存（一级缓存）最大条目数
+     */
+    private long localMaximumSize = 500;
+
+    /**
+     * 本地缓存写入后的过期时间，单位秒
+     */
+    private long localExpireSeconds = 60;
+
+}
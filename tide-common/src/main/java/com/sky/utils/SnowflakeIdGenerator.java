@@ -0,0 +1,102 @@
+package com.sky.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法id生成器
+ * 41位毫秒时间戳 + 10位机器id + 12位毫秒内序列号
+ * 使用CAS更新状态，不加锁：
+ * 1.同一毫秒内序列号递增，序列号用完后借用下一毫秒
+ * 2.系统时钟回拨时继续使用上一次的时间戳，保证生成的id单调递增
+ * 机器id可以在运行时更换，机器id租约丢失且没有租到新id时暂停生成，避免和其他实例重复
+ */
+public class SnowflakeIdGenerator {
+
+    //起始时间 2024-01-01 00:00:00 (UTC+8)
+    private static final long EPOCH = 1704038400000L;
+
+    private static final int WORKER_ID_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private static final int TIMESTAMP_SHIFT = WORKER_ID_BITS + SEQUENCE_BITS;
+
+    //小于0表示暂停生成
+    private volatile long workerId;
+
+    //高位为相对时间戳，低12位为序列号
+    private final AtomicLong state = new AtomicLong();
+
+    public SnowflakeIdGenerator(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId必须在0到" + MAX_WORKER_ID + "之间：" + workerId);
+        }
+        this.workerId = workerId;
+    }
+
+    /**
+     * 生成下一个id
+     * @return
+     */
+    public long nextId() {
+        long workerId = this.workerId;
+        if (workerId < 0) {
+            throw new IllegalStateException("机器id租约已失效，暂停生成id");
+        }
+        while (true) {
+            long current = state.get();
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            long lastSequence = current & MAX_SEQUENCE;
+            long now = System.currentTimeMillis() - EPOCH;
+
+            long next;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else if (lastSequence < MAX_SEQUENCE) {
+                //同一毫秒，或时钟回拨时沿用上一次的时间戳
+                next = current + 1;
+            } else {
+                //当前毫秒的序列号已用完，借用下一毫秒
+                next = (lastTimestamp + 1) << SEQUENCE_BITS;
+            }
+
+            if (state.compareAndSet(current, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                long sequence = next & MAX_SEQUENCE;
+                return (timestamp << TIMESTAMP_SHIFT) | (workerId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    /**
+     * 生成下一个id的字符串形式
+     * @return
+     */
+    public String nextIdStr() {
+        return String.valueOf(nextId());
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 更换机器id，暂停后重新租到机器id时也通过这个方法恢复
+     * @param workerId
+     */
+    public void switchWorkerId(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId必须在0到" + MAX_WORKER_ID + "之间：" + workerId);
+        }
+        this.workerId = workerId;
+    }
+
+    /**
+     * 暂停生成id，直到调用switchWorkerId
+     */
+    public void suspend() {
+        this.workerId = -1;
+    }
+}
@@ -27,4 +27,10 @@ public class OrdersPageQueryDTO implements Serializable {
 
     private Long userId;
 
+    //游标分页，格式为 上一页最后一个订单的下单时间,id，第一页传空字符串，不传时使用页码分页
+    private String cursor;
+
+    //是否统计总数，页码分页默认统计，游标分页默认不统计
+    private Boolean count;
+
 }
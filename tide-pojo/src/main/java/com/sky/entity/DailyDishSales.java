@@ -0,0 +1,32 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 每日商品销量汇总
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyDishSales implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    //统计日期
+    private LocalDate statDate;
+
+    //商品名称
+    private String name;
+
+    //销量
+    private Integer number;
+}
@@ -0,0 +1,39 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * 工作台实时数据
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LiveMetricsVO implements Serializable {
+
+    private LocalDate date;//统计日期
+
+    private Double turnover;//营业额
+
+    private Integer orderCount;//订单总数
+
+    private Integer validOrderCount;//有效订单数
+
+    private Double orderCompletionRate;//订单完成率
+
+    private Double unitPrice;//平均客单价
+
+    private Integer newUsers;//新增用户数
+
+    private Integer toBeConfirmed;//待接单数量
+
+    private Integer confirmed;//待派送数量
+
+    private Integer deliveryInProgress;//派送中数量
+}
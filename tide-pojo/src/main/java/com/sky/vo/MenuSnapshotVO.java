@@ -0,0 +1,34 @@
+package com.sky.vo;
+
+import com.sky.entity.Category;
+import com.sky.entity.Setmeal;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 菜单快照
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MenuSnapshotVO implements Serializable {
+
+    //快照版本号，每次后台修改菜单后递增
+    private Long version;
+
+    //起售中的分类列表
+    private List<Category> categories;
+
+    //分类id -> 起售中的商品和口味
+    private Map<Long, List<DishVO>> dishes;
+
+    //分类id -> 起售中的套餐
+    private Map<Long, List<Setmeal>> setmeals;
+}
@@ -0,0 +1,40 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReportExportJobVO implements Serializable {
+
+    /**
+     * 任务状态 1排队中 2导出中 3已完成 4失败
+     */
+    public static final Integer WAITING = 1;
+    public static final Integer RUNNING = 2;
+    public static final Integer SUCCESS = 3;
+    public static final Integer FAILED = 4;
+
+    //任务id
+    private String jobId;
+    //导出开始日期
+    private LocalDate begin;
+    //导出结束日期
+    private LocalDate end;
+    //任务状态
+    private Integer status;
+    //失败原因
+    private String message;
+    //提交时间
+    private LocalDateTime createTime;
+    //完成时间
+    private LocalDateTime finishTime;
+}
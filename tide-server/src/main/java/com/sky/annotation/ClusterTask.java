@@ -0,0 +1,26 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 自定义注解，集群定时任务
+ * 每个节点都会触发定时任务，只有抢到分布式锁的节点执行，其余节点直接跳过；
+ * 执行后在最小间隔内其他节点再触发也直接跳过，保证每个调度周期只执行一次
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ClusterTask {
+
+    /**
+     * 任务名，同名任务在集群中同一时间只有一个节点执行，默认为 类名.方法名
+     */
+    String name() default "";
+
+    /**
+     * 同一任务两次执行的最小间隔，单位毫秒，小于等于0时根据@Scheduled的周期推算，为周期的十分之九
+     */
+    long minIntervalMs() default -1;
+}
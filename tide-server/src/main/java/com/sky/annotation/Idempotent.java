@@ -0,0 +1,36 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 自定义注解，接口幂等
+ * 客户端在请求头中携带幂等令牌，同一令牌的重复请求直接返回第一次的结果
+ * 未携带令牌时，同一用户同一时间只允许一个请求执行，其余请求立即失败
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Idempotent {
+
+    /**
+     * Redis key前缀，实际key为 前缀:用户id:令牌
+     */
+    String key();
+
+    /**
+     * 携带幂等令牌的请求头
+     */
+    String header() default "Idempotency-Key";
+
+    /**
+     * 处理中状态的最长保留时间(秒)，超过后视为处理失败
+     */
+    int processingSeconds() default 30;
+
+    /**
+     * 处理结果的保留时间(秒)
+     */
+    int resultSeconds() default 86400;
+}
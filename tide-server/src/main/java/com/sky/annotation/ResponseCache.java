@@ -0,0 +1,34 @@
+package com.sky.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 自定义注解，缓存接口最终输出的json字节
+ * 命中时直接写入响应输出流，不再查询和序列化
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ResponseCache {
+    /**
+     * 缓存分组，数据变化时按分组清理，例如setmeal、category
+     */
+    String name();
+
+    /**
+     * 参与构成缓存key的请求参数名
+     */
+    String[] params() default {};
+
+    /**
+     * Redis中的过期时间，单位秒
+     */
+    long ttlSeconds() default 3600;
+
+    /**
+     * 是否gzip压缩后缓存
+     */
+    boolean gzip() default true;
+}
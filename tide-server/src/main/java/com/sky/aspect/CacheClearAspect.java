@@ -1,19 +1,29 @@
 package com.sky.aspect;
 
+import com.sky.constant.CacheConstant;
+import com.sky.dto.DishDTO;
+import com.sky.entity.Dish;
+import com.sky.mapper.DishMapper;
+import com.sky.service.MenuCacheService;
+import com.sky.service.MenuSnapshotService;
+import com.sky.service.ResponseCacheService;
 import lombok.extern.slf4j.Slf4j;
-import org.aspectj.lang.JoinPoint;
-import org.aspectj.lang.annotation.After;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.AfterReturning;
+import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
  * 自定义切面
  * 实现Redis缓存清理
+ * 只清理受影响分类的缓存，无法确定分类时才清理全部商品缓存
  */
 @Aspect
 @Component
@@ -21,7 +31,16 @@ import java.util.Set;
 public class CacheClearAspect {
 
     @Autowired
-    private RedisTemplate redisTemplate;
+    private MenuCacheService menuCacheService;
+
+    @Autowired
+    private MenuSnapshotService menuSnapshotService;
+
+    @Autowired
+    private ResponseCacheService responseCacheService;
+
+    @Autowired
+    private DishMapper dishMapper;
 
     /**
      * 定义切入点：当商品相关操作执行时清理缓存
@@ -34,48 +53,133 @@ public class CacheClearAspect {
     }
 
     /**
-     * 后置通知，在目标方法执行后清理缓存
+     * 定义切入点：套餐相关操作
      */
-    @After("cacheCleanPointCut()")
-    public void cleanCache(JoinPoint joinPoint) {
-        log.info("开始清理商品的Redis缓存数据...");
-
-        // 清理所有以dish_开头的缓存
-        Set<String> keys = redisTemplate.keys("dish_*");
-        if (keys != null && !keys.isEmpty()) {
-            redisTemplate.delete(keys);
-            log.info("清理了{}个dish_相关的缓存", keys.size());
-        }
+    @Pointcut("execution(* com.sky.controller.admin.SetmealController.saveWithDish(..)) || " +
+            "execution(* com.sky.controller.admin.SetmealController.delete(..)) || " +
+            "execution(* com.sky.controller.admin.SetmealController.update(..)) || " +
+            "execution(* com.sky.controller.admin.SetmealController.startOrStop(..))")
+    public void setmealChangePointCut() {
+    }
+
+    /**
+     * 定义切入点：分类相关操作
+     */
+    @Pointcut("execution(* com.sky.controller.admin.CategoryController.save(..)) || " +
+            "execution(* com.sky.controller.admin.CategoryController.deleteById(..)) || " +
+            "execution(* com.sky.controller.admin.CategoryController.update(..)) || " +
+            "execution(* com.sky.controller.admin.CategoryController.startOrStop(..))")
+    public void categoryChangePointCut() {
+    }
+
+    /**
+     * 定义切入点：套餐、分类相关操作会改变用户端菜单
+     */
+    @Pointcut("setmealChangePointCut() || categoryChangePointCut()")
+    public void menuChangePointCut() {
+    }
+
+    /**
+     * 套餐修改后清理套餐接口的响应缓存
+     */
+    @AfterReturning("setmealChangePointCut()")
+    public void cleanSetmealResponseCache() {
+        responseCacheService.evict(CacheConstant.RESPONSE_SETMEAL);
     }
 
     /**
-     * 为新增商品单独定义切点，只清理特定分类的缓存
+     * 分类修改后清理分类接口的响应缓存
      */
-    @Pointcut("execution(* com.sky.controller.admin.DishController.save(..))")
-    public void savePointCut() {
+    @AfterReturning("categoryChangePointCut()")
+    public void cleanCategoryResponseCache() {
+        responseCacheService.evict(CacheConstant.RESPONSE_CATEGORY);
     }
 
     /**
-     * 针对保存方法单独处理，只清理特定分类的缓存
-     * 注意：这个方法需要获取参数中的分类ID，可能需要进一步定制
+     * 菜单数据修改成功后重建菜单快照
+     * 目标方法返回时事务已经提交，重建时能读到最新数据
      */
-    /*
-    @Around("savePointCut()")
-    public Object cleanCategoryCache(ProceedingJoinPoint joinPoint) throws Throwable {
+    @AfterReturning("cacheCleanPointCut() || menuChangePointCut()")
+    public void refreshMenuSnapshot() {
+        log.info("菜单数据发生变化，重建菜单快照...");
+        menuSnapshotService.refresh();
+    }
+
+    /**
+     * 环绕通知
+     * 删除和修改会改变商品所属分类，所以需要在目标方法执行前先查出原来的分类
+     */
+    @Around("cacheCleanPointCut()")
+    public Object cleanCache(ProceedingJoinPoint joinPoint) throws Throwable {
+        String methodName = joinPoint.getSignature().getName();
         Object[] args = joinPoint.getArgs();
 
-        // 先执行目标方法
-        Object result = joinPoint.proceed();
+        // 执行前收集受影响的分类id，null表示无法确定
+        Set<Long> categoryIds = resolveCategoryIds(methodName, args);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            // 修改商品时，新分类的缓存也需要清理
+            if (categoryIds != null && "update".equals(methodName) && args[0] instanceof DishDTO) {
+                categoryIds.add(((DishDTO) args[0]).getCategoryId());
+            }
+            evict(categoryIds);
+        }
+    }
 
-        // 获取分类ID并清理特定缓存
-        if (args != null && args.length > 0 && args[0] instanceof DishDTO) {
-            DishDTO dishDTO = (DishDTO) args[0];
-            String key = "dish_" + dishDTO.getCategoryId();
-            redisTemplate.delete(key);
-            log.info("清理了{}的缓存", key);
+    /**
+     * 根据方法名和参数解析受影响的分类id
+     * @param methodName
+     * @param args
+     * @return
+     */
+    private Set<Long> resolveCategoryIds(String methodName, Object[] args) {
+        try {
+            Set<Long> categoryIds = new HashSet<>();
+            switch (methodName) {
+                case "save":
+                    categoryIds.add(((DishDTO) args[0]).getCategoryId());
+                    break;
+                case "update":
+                    addCategoryOf(categoryIds, ((DishDTO) args[0]).getId());
+                    break;
+                case "startOrStop":
+                    addCategoryOf(categoryIds, (Long) args[1]);
+                    break;
+                case "delete":
+                    List<Long> ids = (List<Long>) args[0];
+                    if (ids != null && !ids.isEmpty()) {
+                        categoryIds.addAll(dishMapper.getCategoryIdsByIds(ids));
+                    }
+                    break;
+                default:
+                    return null;
+            }
+            return categoryIds;
+        } catch (Exception e) {
+            log.warn("解析商品分类失败，将清理全部商品缓存：{}", methodName, e);
+            return null;
+        }
+    }
+
+    private void addCategoryOf(Set<Long> categoryIds, Long dishId) {
+        Dish dish = dishId == null ? null : dishMapper.getById(dishId);
+        if (dish != null) {
+            categoryIds.add(dish.getCategoryId());
         }
+    }
 
-        return result;
+    /**
+     * 清理缓存
+     * @param categoryIds
+     */
+    private void evict(Set<Long> categoryIds) {
+        if (categoryIds == null || categoryIds.isEmpty() || categoryIds.contains(null)) {
+            log.info("开始清理全部商品的Redis缓存数据...");
+            menuCacheService.evictAllDish();
+        } else {
+            log.info("开始清理分类{}的商品缓存数据...", categoryIds);
+            menuCacheService.evictDish(categoryIds);
+        }
     }
-    */
 }
@@ -0,0 +1,260 @@
+package com.sky.aspect;
+
+import com.sky.annotation.ClusterTask;
+import com.sky.constant.CacheConstant;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.EmbeddedValueResolverAware;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringValueResolver;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自定义切面，保证集群中同一个定时任务只有一个节点执行
+ * 使用Redisson锁且不等待：
+ * 1.抢到锁的节点执行任务，不指定租期，由看门狗在任务执行期间自动续期，节点宕机后锁在看门狗超时后释放
+ * 2.没抢到锁的节点直接跳过，不排队等待，避免上一轮执行完后又被重复执行
+ * 3.锁只在执行期间持有，各节点触发时间不同（fixedDelay各自计时、时钟有偏差）时仍会依次执行，
+ *   所以抢到锁后再用SET NX PX占用一个最小间隔的租约，租约未过期时其他节点本周期不再执行，
+ *   最小间隔默认为@Scheduled周期的十分之九
+ * 执行、跳过、失败的次数记录在Redis的hash中，field为 run、skip、fail，
+ * 同时记录最近一次执行的节点、开始时间、耗时和预计的下次执行时间nextFireTime；
+ * 执行时已经超过预计时间一个以上周期，说明中间有周期没有任何节点执行，计入 missed
+ */
+@Aspect
+@Component
+@Slf4j
+public class ClusterTaskAspect implements EmbeddedValueResolverAware {
+
+    //当前节点标识，格式为 pid@主机名
+    private static final String NODE = ManagementFactory.getRuntimeMXBean().getName();
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //解析@Scheduled中的占位符
+    private StringValueResolver valueResolver;
+
+    @Override
+    public void setEmbeddedValueResolver(StringValueResolver resolver) {
+        this.valueResolver = resolver;
+    }
+
+    @Around("@annotation(clusterTask)")
+    public Object around(ProceedingJoinPoint joinPoint, ClusterTask clusterTask) throws Throwable {
+        String name = resolveName(joinPoint, clusterTask);
+        RLock lock = redissonClient.getLock(CacheConstant.TASK_LOCK_PREFIX + name);
+
+        boolean locked;
+        try {
+            locked = lock.tryLock();
+        } catch (Exception e) {
+            //Redis不可用时无法判断其他节点是否在执行，本轮不执行
+            log.error("获取定时任务锁失败，跳过本次执行：{}", name, e);
+            return null;
+        }
+        if (!locked) {
+            log.debug("定时任务正在其他节点执行，跳过：{}", name);
+            increment(name, "skip");
+            return null;
+        }
+
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        long periodMs = resolvePeriodMs(method);
+        try {
+            if (!acquireLease(name, clusterTask, periodMs)) {
+                log.debug("定时任务本周期已在其他节点执行，跳过：{}", name);
+                increment(name, "skip");
+                return null;
+            }
+
+            LocalDateTime startTime = LocalDateTime.now();
+            long start = System.currentTimeMillis();
+            recordMissed(name, startTime, periodMs);
+            try {
+                Object result = joinPoint.proceed();
+                increment(name, "run");
+                return result;
+            } catch (Throwable e) {
+                increment(name, "fail");
+                throw e;
+            } finally {
+                recordLastRun(name, startTime, System.currentTimeMillis() - start, nextFireTime(method, periodMs));
+            }
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 占用最小间隔的租约，租约由过期自动释放，不在执行结束时删除
+     * 无法推算周期且未配置最小间隔时不占用租约，只靠锁互斥
+     * @param name
+     * @param clusterTask
+     * @param periodMs
+     * @return
+     */
+    private boolean acquireLease(String name, ClusterTask clusterTask, long periodMs) {
+        long leaseMs = clusterTask.minIntervalMs() > 0 ? clusterTask.minIntervalMs() : periodMs * 9 / 10;
+        if (leaseMs <= 0) {
+            return true;
+        }
+        try {
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(CacheConstant.TASK_LEASE_PREFIX + name, NODE, leaseMs, TimeUnit.MILLISECONDS);
+            return Boolean.TRUE.equals(success);
+        } catch (Exception e) {
+            log.error("获取定时任务租约失败，跳过本次执行：{}", name, e);
+            return false;
+        }
+    }
+
+    /**
+     * 根据@Scheduled推算执行周期，cron取接下来两次触发时间之差，无法推算时返回-1
+     * @param method
+     * @return
+     */
+    private long resolvePeriodMs(Method method) {
+        Scheduled scheduled = AnnotatedElementUtils.findMergedAnnotation(method, Scheduled.class);
+        if (scheduled == null) {
+            return -1;
+        }
+        try {
+            CronExpression cron = resolveCron(scheduled);
+            if (cron != null) {
+                ZonedDateTime next = cron.next(ZonedDateTime.now());
+                ZonedDateTime after = next == null ? null : cron.next(next);
+                return after == null ? -1 : Duration.between(next, after).toMillis();
+            }
+            if (scheduled.fixedDelay() > 0) {
+                return scheduled.fixedDelay();
+            }
+            if (scheduled.fixedRate() > 0) {
+                return scheduled.fixedRate();
+            }
+            String interval = !scheduled.fixedDelayString().isEmpty() ? scheduled.fixedDelayString() : scheduled.fixedRateString();
+            if (!interval.isEmpty()) {
+                return Long.parseLong(valueResolver.resolveStringValue(interval).trim());
+            }
+        } catch (Exception e) {
+            log.warn("无法推算定时任务周期：{}", method, e);
+        }
+        return -1;
+    }
+
+    private CronExpression resolveCron(Scheduled scheduled) {
+        if (scheduled.cron().isEmpty()) {
+            return null;
+        }
+        return CronExpression.parse(valueResolver.resolveStringValue(scheduled.cron()).trim());
+    }
+
+    /**
+     * 预计的下次执行时间：cron为下一次触发时间，固定间隔为当前时间加一个周期
+     * @param method
+     * @param periodMs
+     * @return
+     */
+    private LocalDateTime nextFireTime(Method method, long periodMs) {
+        if (periodMs <= 0) {
+            return null;
+        }
+        try {
+            CronExpression cron = resolveCron(AnnotatedElementUtils.findMergedAnnotation(method, Scheduled.class));
+            if (cron != null) {
+                ZonedDateTime next = cron.next(ZonedDateTime.now());
+                return next == null ? null : next.toLocalDateTime();
+            }
+        } catch (Exception e) {
+            log.warn("无法推算定时任务下次执行时间：{}", method, e);
+            return null;
+        }
+        return LocalDateTime.now().plus(Duration.ofMillis(periodMs));
+    }
+
+    /**
+     * 比较上次记录的预计执行时间，统计中间没有任何节点执行的周期数
+     * @param name
+     * @param startTime
+     * @param periodMs
+     */
+    private void recordMissed(String name, LocalDateTime startTime, long periodMs) {
+        if (periodMs <= 0) {
+            return;
+        }
+        try {
+            Object expected = stringRedisTemplate.opsForHash().get(CacheConstant.TASK_STATS_PREFIX + name, "nextFireTime");
+            if (expected == null) {
+                return;
+            }
+            long lateMs = Duration.between(LocalDateTime.parse(expected.toString()), startTime).toMillis();
+            long missed = lateMs / periodMs;
+            if (missed > 0) {
+                log.warn("定时任务{}有{}个周期没有节点执行，预计执行时间：{}", name, missed, expected);
+                stringRedisTemplate.opsForHash().increment(CacheConstant.TASK_STATS_PREFIX + name, "missed", missed);
+            }
+        } catch (Exception e) {
+            log.warn("记录定时任务统计失败：{}", name, e);
+        }
+    }
+
+    /**
+     * 解析任务名
+     * @param joinPoint
+     * @param clusterTask
+     * @return
+     */
+    private String resolveName(ProceedingJoinPoint joinPoint, ClusterTask clusterTask) {
+        if (!clusterTask.name().isEmpty()) {
+            return clusterTask.name();
+        }
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        return signature.getDeclaringType().getSimpleName() + "." + signature.getName();
+    }
+
+    private void increment(String name, String field) {
+        try {
+            stringRedisTemplate.opsForHash().increment(CacheConstant.TASK_STATS_PREFIX + name, field, 1);
+        } catch (Exception e) {
+            log.warn("记录定时任务统计失败：{}", name, e);
+        }
+    }
+
+    private void recordLastRun(String name, LocalDateTime startTime, long costMs, LocalDateTime nextFireTime) {
+        Map<String, String> lastRun = new HashMap<>();
+        lastRun.put("lastNode", NODE);
+        lastRun.put("lastStartTime", startTime.toString());
+        lastRun.put("lastCostMs", String.valueOf(costMs));
+        if (nextFireTime != null) {
+            lastRun.put("nextFireTime", nextFireTime.toString());
+        }
+        try {
+            stringRedisTemplate.opsForHash().putAll(CacheConstant.TASK_STATS_PREFIX + name, lastRun);
+        } catch (Exception e) {
+            log.warn("记录定时任务统计失败：{}", name, e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.sky.aspect;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.sky.annotation.Idempotent;
+import com.sky.constant.MessageConstant;
+import com.sky.context.BaseContext;
+import com.sky.exception.OrderBusinessException;
+import com.sky.json.JacksonObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 自定义切面，实现接口幂等
+ * 使用SETNX占位，不会阻塞等待：
+ * 1.占位成功，执行目标方法，成功后缓存返回结果，失败后删除占位
+ * 2.占位失败，已有结果时直接返回结果，仍在处理中时立即失败
+ */
+@Aspect
+@Component
+@Slf4j
+public class IdempotentAspect {
+
+    //处理中的占位值
+    private static final String PROCESSING = "PROCESSING";
+
+    //令牌只允许字母、数字、下划线和中划线
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private final JacksonObjectMapper objectMapper = new JacksonObjectMapper();
+
+    @Around("@annotation(idempotent)")
+    public Object around(ProceedingJoinPoint joinPoint, Idempotent idempotent) throws Throwable {
+        String token = null;
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            token = attributes.getRequest().getHeader(idempotent.header());
+        }
+
+        Long userId = BaseContext.getCurrentId();
+        if (token == null || token.isEmpty()) {
+            return guard(joinPoint, idempotent, userId);
+        }
+        if (!TOKEN_PATTERN.matcher(token).matches()) {
+            throw new OrderBusinessException(MessageConstant.IDEMPOTENCY_KEY_INVALID);
+        }
+
+        String key = idempotent.key() + ":" + userId + ":" + token;
+        Boolean first = stringRedisTemplate.opsForValue()
+                .setIfAbsent(key, PROCESSING, idempotent.processingSeconds(), TimeUnit.SECONDS);
+
+        if (!Boolean.TRUE.equals(first)) {
+            String cached = stringRedisTemplate.opsForValue().get(key);
+            if (cached == null || PROCESSING.equals(cached)) {
+                log.info("重复请求，第一次请求仍在处理中：{}", key);
+                throw new OrderBusinessException(MessageConstant.REQUEST_PROCESSING);
+            }
+            log.info("重复请求，直接返回第一次的结果：{}", key);
+            MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+            JavaType type = objectMapper.constructType(signature.getMethod().getGenericReturnType());
+            return objectMapper.readValue(cached, type);
+        }
+
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } catch (Throwable e) {
+            //执行失败，删除占位，允许客户端使用同一令牌重试
+            stringRedisTemplate.delete(key);
+            throw e;
+        }
+
+        try {
+            stringRedisTemplate.opsForValue().set(key, objectMapper.writeValueAsString(result),
+                    idempotent.resultSeconds(), TimeUnit.SECONDS);
+        } catch (Exception e) {
+            //结果缓存失败不影响本次请求，占位到期后自动释放
+            log.error("缓存幂等结果失败：{}", key, e);
+        }
+        return result;
+    }
+
+    /**
+     * 未携带令牌时，同一用户同一时间只允许一个请求执行
+     * @param joinPoint
+     * @param idempotent
+     * @param userId
+     * @return
+     * @throws Throwable
+     */
+    private Object guard(ProceedingJoinPoint joinPoint, Idempotent idempotent, Long userId) throws Throwable {
+        String key = idempotent.key() + ":" + userId + ":guard";
+        Boolean first = stringRedisTemplate.opsForValue()
+                .setIfAbsent(key, PROCESSING, idempotent.processingSeconds(), TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(first)) {
+            log.info("同一用户并发请求：{}", key);
+            throw new OrderBusinessException(MessageConstant.REQUEST_PROCESSING);
+        }
+        try {
+            return joinPoint.proceed();
+        } finally {
+            stringRedisTemplate.delete(key);
+        }
+    }
+}
@@ -10,35 +10,52 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Aspect
 @Slf4j
 @Component
 public class RateLimitAspect {
 
+    //key前缀
+    private static final String KEY_PREFIX = "rate_limit:";
+
+    private static final SpelExpressionParser PARSER =
+            new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.MIXED, null));
+
+    private static final ParameterNameDiscoverer PARAMETER_NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+
     @Autowired
     private RateLimiterService rateLimiterService;
 
-    @Around("@annotation(com.sky.config.RateLimit)")
-    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+    //每个方法解析好的key模板
+    private final Map<Method, LimitKeyTemplate> keyTemplates = new ConcurrentHashMap<>();
+
+    @Around("@annotation(rateLimit)")
+    public Object around(ProceedingJoinPoint joinPoint, RateLimit rateLimit) throws Throwable {
         // 获取方法签名
         MethodSignature signature = (MethodSignature) joinPoint.getSignature();
         Method method = signature.getMethod();
 
-        //获取限流注解
-        RateLimit rateLimit = method.getAnnotation(RateLimit.class);
-        if (rateLimit == null) {
-            return joinPoint.proceed();
-        }
-
         // 构建限流key
-        String limitKey = buildLimitKey(rateLimit.key(), method);
+        String limitKey = getKeyTemplate(rateLimit, method).render(joinPoint.getArgs());
         boolean allowed = false;
 
         // 根据限流类型选择不同的限流策略
@@ -49,6 +66,30 @@ public class RateLimitAspect {
                     rateLimit.windowSeconds(),
                     rateLimit.limit()
             );
+        } else if (rateLimit.type() == 2) {
+            // 滑动窗口计数限流
+            allowed = rateLimiterService.isAllowedBySlidingWindow(
+                    limitKey,
+                    rateLimit.windowSeconds(),
+                    rateLimit.limit()
+            );
+        } else if (rateLimit.type() == 3) {
+            // GCRA限流
+            allowed = rateLimiterService.isAllowedByGcra(
+                    limitKey,
+                    rateLimit.windowSeconds(),
+                    rateLimit.limit(),
+                    rateLimit.requested()
+            );
+        } else if (rateLimit.leaseSize() > 0) {
+            // 令牌桶限流，本地扣减租借的令牌
+            allowed = rateLimiterService.isAllowedByLeasedTokenBucket(
+                    limitKey,
+                    rateLimit.capacity(),
+                    rateLimit.rate(),
+                    rateLimit.requested(),
+                    rateLimit.leaseSize()
+            );
         } else {
             // 令牌桶限流
             allowed = rateLimiterService.isAllowedByTokenBucket(
@@ -68,42 +109,23 @@ public class RateLimitAspect {
     }
 
     /**
-     * 构建限流的key
-     * @param key
+     * 获取方法对应的key模板，每个方法只解析一次
+     * @param rateLimit
      * @param method
      * @return
      */
-    private String buildLimitKey(String key, Method method) {
-        StringBuilder limitKey = new StringBuilder("rate_limit:");
-
-        // 如果没有指定key，就用方法全限定名
-        if (key.isEmpty()) {
-            limitKey.append(method.getDeclaringClass().getName())
-                    .append(".")
-                    .append(method.getName());
-        } else {
-            limitKey.append(key);
-        }
-
-        // 支持按用户ID限流
-        if (key.contains("{userId}")) {
-            Long userId = BaseContext.getCurrentId();
-            limitKey = new StringBuilder(limitKey.toString().replace("{userId}", userId != null ? userId.toString() : "anonymous"));
+    private LimitKeyTemplate getKeyTemplate(RateLimit rateLimit, Method method) {
+        LimitKeyTemplate template = keyTemplates.get(method);
+        if (template == null) {
+            template = keyTemplates.computeIfAbsent(method, m -> LimitKeyTemplate.compile(rateLimit.key(), m));
         }
-
-        // 支持按IP限流
-        if (key.contains("{ip}")) {
-            String ip = getIpAddress();
-            limitKey = new StringBuilder(limitKey.toString().replace("{ip}", ip));
-        }
-
-        return limitKey.toString();
+        return template;
     }
 
     /**
      * 获取请求IP地址
      */
-    private String getIpAddress() {
+    private static String getIpAddress() {
         try {
             ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
             if (attributes != null) {
@@ -118,14 +140,136 @@ public class RateLimitAspect {
                 if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
                     ip = request.getRemoteAddr();
                 }
-                return ip;
+                //经过多层代理时X-Forwarded-For为 客户端,代理1,代理2，取第一个
+                int index = ip.indexOf(',');
+                return index > 0 ? ip.substring(0, index).trim() : ip;
             }
         } catch (Exception e) {
             log.error("获取IP地址异常", e);
         }
         return "unknown";
     }
+
+    /**
+     * 解析好的限流key模板
+     * 注解中的key在第一次调用时拆分为固定文本和占位符，之后每次调用只需要按顺序拼接
+     * 支持的占位符：
+     * {userId} 当前用户id，未登录时为anonymous
+     * {ip} 请求IP
+     * {#参数名...} SpEL表达式，例如 {#shopId}、{#dto.addressBookId}
+     */
+    private static class LimitKeyTemplate {
+
+        private static final int LITERAL = 0;
+        private static final int USER_ID = 1;
+        private static final int IP = 2;
+        private static final int EXPRESSION = 3;
+
+        private final List<Integer> types = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+        private final String[] parameterNames;
+        private int literalLength;
+
+        private LimitKeyTemplate(Method method, boolean hasExpression) {
+            this.parameterNames = hasExpression ? PARAMETER_NAME_DISCOVERER.getParameterNames(method) : null;
+        }
+
+        static LimitKeyTemplate compile(String key, Method method) {
+            // 如果没有指定key，就用方法全限定名
+            if (key.isEmpty()) {
+                LimitKeyTemplate template = new LimitKeyTemplate(method, false);
+                template.addLiteral(KEY_PREFIX + method.getDeclaringClass().getName() + "." + method.getName());
+                return template;
+            }
+
+            LimitKeyTemplate template = new LimitKeyTemplate(method, key.contains("{#"));
+            template.addLiteral(KEY_PREFIX);
+            int position = 0;
+            while (position < key.length()) {
+                int open = key.indexOf('{', position);
+                int close = open < 0 ? -1 : key.indexOf('}', open);
+                if (close < 0) {
+                    template.addLiteral(key.substring(position));
+                    break;
+                }
+                template.addLiteral(key.substring(position, open));
+                String placeholder = key.substring(open + 1, close);
+                if ("userId".equals(placeholder)) {
+                    template.add(USER_ID, null);
+                } else if ("ip".equals(placeholder)) {
+                    template.add(IP, null);
+                } else if (placeholder.startsWith("#")) {
+                    template.add(EXPRESSION, PARSER.parseExpression(placeholder));
+                } else {
+                    template.addLiteral(key.substring(open, close + 1));
+                }
+                position = close + 1;
+            }
+            return template;
+        }
+
+        private void addLiteral(String literal) {
+            if (literal.isEmpty()) {
+                return;
+            }
+            //相邻的固定文本合并为一段
+            int last = types.size() - 1;
+            if (last >= 0 && types.get(last) == LITERAL) {
+                values.set(last, values.get(last) + literal);
+            } else {
+                add(LITERAL, literal);
+            }
+            literalLength += literal.length();
+        }
+
+        private void add(int type, Object value) {
+            types.add(type);
+            values.add(value);
+        }
+
+        String render(Object[] args) {
+            //只有固定文本时直接返回
+            if (types.size() == 1 && types.get(0) == LITERAL) {
+                return (String) values.get(0);
+            }
+            StringBuilder limitKey = new StringBuilder(literalLength + 32);
+            EvaluationContext context = null;
+            for (int i = 0; i < types.size(); i++) {
+                switch (types.get(i)) {
+                    case USER_ID:
+                        Long userId = BaseContext.getCurrentId();
+                        limitKey.append(userId != null ? userId.toString() : "anonymous");
+                        break;
+                    case IP:
+                        limitKey.append(getIpAddress());
+                        break;
+                    case EXPRESSION:
+                        if (context == null) {
+                            context = createContext(args);
+                        }
+                        limitKey.append(((Expression) values.get(i)).getValue(context, String.class));
+                        break;
+                    default:
+                        limitKey.append((String) values.get(i));
+                }
+            }
+            return limitKey.toString();
+        }
+
+        private EvaluationContext createContext(Object[] args) {
+            StandardEvaluationContext context = new StandardEvaluationContext();
+            for (int i = 0; i < args.length; i++) {
+                //编译时没有保留参数名时，使用 #p0、#p1 引用参数
+                context.setVariable("p" + i, args[i]);
+                if (parameterNames != null && i < parameterNames.length) {
+                    context.setVariable(parameterNames[i], args[i]);
+                }
+            }
+            return context;
+        }
+    }
 }
+
 /**
  * 当一个带有 @RateLimit 注解的方法被调用时：
  * 切面拦截该方法调用
@@ -0,0 +1,131 @@
+package com.sky.aspect;
+
+import com.sky.annotation.ResponseCache;
+import com.sky.json.JacksonObjectMapper;
+import com.sky.service.ResponseCacheService;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 自定义切面
+ * 缓存接口最终输出的json字节，命中时直接写入响应输出流
+ * 目标方法返回null，Spring MVC不会再进行序列化
+ */
+@Aspect
+@Component
+@Slf4j
+public class ResponseCacheAspect {
+
+    @Autowired
+    private ResponseCacheService responseCacheService;
+
+    //与Spring MVC消息转换器使用相同的序列化规则
+    private final JacksonObjectMapper objectMapper = new JacksonObjectMapper();
+
+    @Around("@annotation(responseCache)")
+    public Object around(ProceedingJoinPoint joinPoint, ResponseCache responseCache) throws Throwable {
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        if (attributes == null || attributes.getResponse() == null) {
+            return joinPoint.proceed();
+        }
+        HttpServletRequest request = attributes.getRequest();
+        HttpServletResponse response = attributes.getResponse();
+
+        String key = responseCacheService.buildKey(responseCache.name(), buildParams(request, responseCache.params()));
+
+        byte[] body = responseCacheService.get(key);
+        if (body == null) {
+            //未命中，执行目标方法并缓存序列化后的结果
+            Object result = joinPoint.proceed();
+            byte[] json = objectMapper.writeValueAsBytes(result);
+            body = responseCache.gzip() ? gzip(json) : json;
+            responseCacheService.put(responseCache.name(), key, body, responseCache.ttlSeconds());
+        }
+
+        write(request, response, body);
+        return null;
+    }
+
+    /**
+     * 按注解中声明的参数顺序拼接缓存key，未声明的参数不参与
+     * @param request
+     * @param params
+     * @return
+     */
+    private String buildParams(HttpServletRequest request, String[] params) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) {
+                sb.append("&");
+            }
+            String value = request.getParameter(params[i]);
+            sb.append(params[i]).append("=").append(value == null ? "" : value);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 输出响应字节，客户端不支持gzip时解压后输出
+     * @param request
+     * @param response
+     * @param body
+     * @throws IOException
+     */
+    private void write(HttpServletRequest request, HttpServletResponse response, byte[] body) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        if (isGzip(body)) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            } else {
+                body = gunzip(body);
+            }
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        response.flushBuffer();
+    }
+
+    /**
+     * 根据gzip魔数判断是否为压缩数据，json不会以0x1f开头
+     * @param body
+     * @return
+     */
+    private boolean isGzip(byte[] body) {
+        return body.length > 1 && body[0] == (byte) 0x1f && body[1] == (byte) 0x8b;
+    }
+
+    private byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] gunzip(byte[] data) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return StreamUtils.copyToByteArray(gzip);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.sky.config;
+
+import com.sky.properties.OrderNumberProperties;
+import com.sky.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 配置类，用于创建订单号生成器
+ * 机器id优先使用配置文件中的值，未配置时从Redis租用一个未被占用的id，并定期续约，
+ * 租约被其他实例占用时重新租用新的机器id；租不到或者超过有效期都没有续约成功时，暂停生成订单号
+ */
+@Configuration
+@Slf4j
+public class OrderNumberConfiguration {
+
+    private static final String WORKER_LEASE_KEY_PREFIX = "order:worker:";
+
+    //比较租约的值后再续期，见lua/worker_lease_renew.lua
+    private static final RedisScript<Long> RENEW_SCRIPT =
+            RedisScript.of(new ClassPathResource("lua/worker_lease_renew.lua"), Long.class);
+
+    @Autowired
+    private OrderNumberProperties orderNumberProperties;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    //当前实例的唯一标识，作为租约的值
+    private final String instanceId = UUID.randomUUID().toString();
+
+    //租用成功的key，使用配置的机器id时为null
+    private volatile String leaseKey;
+
+    //租用成功的机器id，续约恢复时用它恢复暂停的生成器
+    private volatile long leasedWorkerId;
+
+    //最近一次租用或续约成功的时间
+    private volatile long leaseRenewedAt;
+
+    private SnowflakeIdGenerator generator;
+
+    @Bean
+    public SnowflakeIdGenerator orderNumberGenerator() {
+        Long workerId = orderNumberProperties.getWorkerId();
+        if (workerId == null) {
+            workerId = leaseWorkerId();
+        }
+        log.info("创建订单号生成器，机器id：{}", workerId);
+        generator = new SnowflakeIdGenerator(workerId);
+        return generator;
+    }
+
+    /**
+     * 依次尝试租用机器id
+     * @return
+     */
+    private long leaseWorkerId() {
+        for (long workerId = 0; workerId <= SnowflakeIdGenerator.MAX_WORKER_ID; workerId++) {
+            String key = WORKER_LEASE_KEY_PREFIX + workerId;
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(key, instanceId, orderNumberProperties.getLeaseSeconds(), TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                leaseKey = key;
+                leasedWorkerId = workerId;
+                leaseRenewedAt = System.currentTimeMillis();
+                return workerId;
+            }
+        }
+        throw new IllegalStateException("没有可用的订单号机器id");
+    }
+
+    /**
+     * 续约，间隔为租约有效期的三分之一
+     * 续约通过Lua脚本比较租约的值后再续期，不会续上其他实例刚刚占用的租约
+     */
+    @Scheduled(fixedDelayString = "#{${sky.order-number.lease-seconds:60} * 1000 / 3}")
+    public void renewLease() {
+        String key = leaseKey;
+        if (key == null) {
+            return;
+        }
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key),
+                    instanceId, String.valueOf(orderNumberProperties.getLeaseSeconds()));
+            if (renewed != null && renewed == 1L) {
+                leaseRenewedAt = System.currentTimeMillis();
+                //之前续约超时被暂停，但租约仍属于当前实例，继续使用原来的机器id
+                if (generator.getWorkerId() < 0) {
+                    generator.switchWorkerId(leasedWorkerId);
+                    log.info("订单号机器id续约恢复，继续使用机器id：{}", leasedWorkerId);
+                }
+                return;
+            }
+            //租约已过期或被其他实例占用，继续使用原来的机器id可能生成重复的订单号，先暂停再重新租用
+            log.error("订单号机器id租约已失效，重新租用：{}", key);
+            generator.suspend();
+            long workerId = leaseWorkerId();
+            generator.switchWorkerId(workerId);
+            log.info("订单号生成器更换机器id：{}", workerId);
+        } catch (Exception e) {
+            log.error("订单号机器id续约失败：{}", key, e);
+            //超过有效期都没有续约成功时，租约可能已被其他实例占用
+            if (System.currentTimeMillis() - leaseRenewedAt >= orderNumberProperties.getLeaseSeconds() * 1000L) {
+                generator.suspend();
+            }
+        }
+    }
+
+    /**
+     * 停机时释放租约
+     */
+    @PreDestroy
+    public void releaseLease() {
+        String key = leaseKey;
+        if (key == null) {
+            return;
+        }
+        try {
+            if (instanceId.equals(stringRedisTemplate.opsForValue().get(key))) {
+                stringRedisTemplate.delete(key);
+            }
+        } catch (Exception e) {
+            log.warn("释放订单号机器id租约失败：{}", key, e);
+        }
+    }
+}
@@ -18,20 +18,28 @@ public @interface RateLimit {
     /**
      * 限流key前缀
      * 支持使用 {userId} 和 {ip} 作为变量，运行时会被实际值替换
+     * 也可以使用 {#参数名} 形式的SpEL表达式引用方法参数，例如 shop:{#shopId}、order:{#dto.addressBookId}
+     * key在方法第一次调用时解析，之后只按解析结果拼接
      */
     String key() default "";
     /**
-     * 时间窗口(秒)
+     * 时间窗口(秒)，固定窗口、滑动窗口计数、GCRA使用
      */
     int windowSeconds() default 1;
 
     /**
-     * 限流阈值(窗口期内最大请求数)
+     * 限流阈值(窗口期内最大请求数)，固定窗口、滑动窗口计数、GCRA使用
      */
     int limit() default 10;
 
     /**
-     * 限流类型: 0-固定窗口, 1-令牌桶
+     * 限流类型: 0-固定窗口, 1-令牌桶, 2-滑动窗口计数, 3-GCRA
+     * 每次判断在脚本内执行的Redis命令数(放行/拒绝)，由RateLimitCommandStatsTest统计INFO commandstats验证：
+     * 固定窗口 2-3次/1次(GET、INCR，窗口第一次计数时加EXPIRE；拒绝只有GET)，窗口交界处最多放行2倍阈值
+     * 令牌桶 6次/6次(TIME、2次HGET、2次HSET、EXPIRE，拒绝时也写回)，允许容量内的突发
+     * 滑动窗口计数 4次/2次(TIME、HMGET、HSET、PEXPIRE；拒绝只有TIME、HMGET)，按上一个窗口的重叠比例估算，没有窗口交界的突发
+     * GCRA 3次/2次(TIME、GET、SET；拒绝只有TIME、GET)，效果与容量为limit的令牌桶相同，只保存一个时间戳
+     * 每种类型都只有一次网络往返
      */
     int type() default 0;
 
@@ -46,10 +54,18 @@ public @interface RateLimit {
     int rate() default 10;
 
     /**
-     * 令牌桶专用-每次请求消耗令牌数
+     * 令牌桶、GCRA使用-每次请求消耗令牌数
      */
     int requested() default 1;
 
+    /**
+     * 令牌桶专用-每次从Redis租借的令牌数，大于0时每个节点批量租借令牌后在本地扣减，
+     * 只有本地令牌用完才访问Redis；应小于容量，值越大Redis访问越少，但各节点之间的令牌分配越不均匀
+     * 只适合所有请求共用一个key、请求量大的方法级限流；按用户或IP限流时每个key的请求很少，
+     * 租借节省不了Redis访问，反而让个别节点占住用户的令牌，例如登录、下单接口都不使用
+     */
+    int leaseSize() default 0;
+
     /**
      * 限流提示消息
      */
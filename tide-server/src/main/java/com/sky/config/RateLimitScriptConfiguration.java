@@ -0,0 +1,80 @@
+package com.sky.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 限流Lua脚本
+ * 脚本内容在启动时读取为字符串，SHA1只计算一次；不直接使用ClassPathResource，
+ * 否则每次执行都会加锁检查文件的修改时间，在jar包中还要打开一次jar连接
+ * 执行时先发送EVALSHA，Redis返回NOSCRIPT时自动改用EVAL重新加载脚本
+ */
+@Configuration
+public class RateLimitScriptConfiguration {
+
+    /**
+     * 固定窗口限流脚本
+     * @return
+     */
+    @Bean
+    public RedisScript<Long> fixedWindowScript() {
+        return load("lua/fixed_window.lua");
+    }
+
+    /**
+     * 令牌桶限流脚本
+     * @return
+     */
+    @Bean
+    public RedisScript<Long> tokenBucketScript() {
+        return load("lua/token_bucket.lua");
+    }
+
+    /**
+     * 滑动窗口计数限流脚本
+     * @return
+     */
+    @Bean
+    public RedisScript<Long> slidingWindowScript() {
+        return load("lua/sliding_window.lua");
+    }
+
+    /**
+     * GCRA限流脚本
+     * @return
+     */
+    @Bean
+    public RedisScript<Long> gcraScript() {
+        return load("lua/gcra.lua");
+    }
+
+    /**
+     * 令牌桶批量租借脚本
+     * @return
+     */
+    @Bean
+    public RedisScript<Long> tokenBucketLeaseScript() {
+        return load("lua/token_bucket_lease.lua");
+    }
+
+    /**
+     * 读取classpath下的脚本
+     * @param path
+     * @return
+     */
+    static RedisScript<Long> load(String path) {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            return new DefaultRedisScript<>(StreamUtils.copyToString(in, StandardCharsets.UTF_8), Long.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("读取Lua脚本失败：" + path, e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.sky.config;
 
+import com.sky.interceptor.ConcurrencyLimitInterceptor;
 import com.sky.interceptor.JwtTokenAdminInterceptor;
 import com.sky.interceptor.JwtTokenUserInterceptor;
 import com.sky.json.JacksonObjectMapper;
@@ -30,6 +31,9 @@ public class WebMvcConfiguration extends WebMvcConfigurationSupport {
     @Autowired
     private JwtTokenUserInterceptor jwtTokenUserInterceptor;
 
+    @Autowired
+    private ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+
     /**
      * 注册自定义拦截器
      *
@@ -37,6 +41,10 @@ public class WebMvcConfiguration extends WebMvcConfigurationSupport {
      */
     protected void addInterceptors(InterceptorRegistry registry) {
         log.info("开始注册自定义拦截器...");
+        //并发限制放在最前面，过载时不再校验令牌，直接返回503
+        registry.addInterceptor(concurrencyLimitInterceptor)
+                .addPathPatterns("/admin/**", "/user/**", "/notify/**");
+
         registry.addInterceptor(jwtTokenAdminInterceptor)
                 .addPathPatterns("/admin/**")
                 .excludePathPatterns("/admin/employee/login");
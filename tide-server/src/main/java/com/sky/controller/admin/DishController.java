@@ -14,12 +14,10 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ibatis.annotations.Delete;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Key;
 import java.util.List;
-import java.util.Set;
 
 @RequestMapping("/admin/dish")
 @RestController
@@ -30,9 +28,6 @@ public class DishController {
     @Autowired
     private DishService dishService;
 
-    @Autowired
-    private RedisTemplate redisTemplate;
-
     /**
      * 新增商品
      * @param dishDTO
@@ -43,10 +38,7 @@ public class DishController {
     public Result save(@RequestBody DishDTO dishDTO){
         log.info("新增商品和口味：{}",dishDTO);
         dishService.saveWithFlavor(dishDTO);
-
-        //清理缓存数据
-        String key = "dish_" + dishDTO.getCategoryId();
-        cleanCache(key);
+        //缓存清理由CacheClearAspect统一处理
         return Result.success();
     }
 
@@ -65,9 +57,7 @@ public class DishController {
     public Result delete(@RequestParam List<Long> ids){
         log.info("批量删除商品：{}",ids);
         dishService.deleteBatch(ids);
-        //将所有的商品缓存数据删除
-        //先获取所有以dish_开头的key
-        cleanCache("dish_*");
+        //缓存清理由CacheClearAspect统一处理，只清理被删除商品所属分类的缓存
         return Result.success();
     }
 
@@ -76,8 +66,7 @@ public class DishController {
     public Result startOrStop(@PathVariable Integer status,Long id){
         log.info("起售停售商品：{},{}",status,id);
         dishService.startOrStop(status,id);
-        //清理缓存数据，也是全部删除
-        cleanCache("dish_*");
+        //缓存清理由CacheClearAspect统一处理
         return Result.success();
     }
 
@@ -95,8 +84,7 @@ public class DishController {
     public Result update(@RequestBody DishDTO dishDTO){
         log.info("修改商品：{}",dishDTO);
         dishService.updateWithFlavor(dishDTO);
-        //清理缓存数据，也是全部删除
-        cleanCache("dish_*");
+        //缓存清理由CacheClearAspect统一处理
         return Result.success();
     }
 
@@ -108,13 +96,4 @@ public class DishController {
         return Result.success(list);
     }
 
-    /**
-     * 清理缓存数据
-     * @param pattern
-     */
-    private void cleanCache(String pattern){
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
-    }
-
 }
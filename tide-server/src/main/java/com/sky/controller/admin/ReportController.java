@@ -3,8 +3,10 @@ package com.sky.controller.admin;
 
 import com.sky.dto.DataOverViewQueryDTO;
 import com.sky.result.Result;
+import com.sky.service.ReportExportService;
 import com.sky.service.ReportService;
 import com.sky.vo.OrderReportVO;
+import com.sky.vo.ReportExportJobVO;
 import com.sky.vo.SalesTop10ReportVO;
 import com.sky.vo.TurnoverReportVO;
 import com.sky.vo.UserReportVO;
@@ -15,6 +17,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -33,6 +37,9 @@ public class ReportController {
     @Autowired
     private ReportService reportService;
 
+    @Autowired
+    private ReportExportService reportExportService;
+
     @GetMapping("/turnoverStatistics")
     @Operation(summary =  "营业额统计")
     //日期类型是有固定格式的
@@ -65,10 +72,38 @@ public class ReportController {
     @GetMapping("/export")
     @Operation(summary =  "导出数据")
     //因为下载的时候是需要设置响应头，获取输出流，写入文件内容的
-    public void export(HttpServletResponse response){
-        log.info("导出数据");
-        reportService.export(response);
+    //不传日期时默认导出最近30天
+    public void export(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin, @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end, HttpServletResponse response){
+        if (end == null) {
+            end = LocalDate.now().minusDays(1);
+        }
+        if (begin == null) {
+            begin = end.minusDays(29);
+        }
+        log.info("导出数据:{},{}",begin,end);
+        reportService.export(begin, end, response);
         //因为这里是不需要返回的数据，不需要设置return
     }
 
+    @PostMapping("/export")
+    @Operation(summary =  "提交导出任务")
+    //任意日期范围在后台导出，返回任务id，通过任务id查询状态和下载
+    public Result<ReportExportJobVO> submitExport(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin, @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end){
+        log.info("提交导出任务:{},{}",begin,end);
+        return Result.success(reportExportService.submit(begin,end));
+    }
+
+    @GetMapping("/export/{jobId}")
+    @Operation(summary =  "查询导出任务")
+    public Result<ReportExportJobVO> exportStatus(@PathVariable String jobId){
+        return Result.success(reportExportService.getJob(jobId));
+    }
+
+    @GetMapping("/export/{jobId}/download")
+    @Operation(summary =  "下载导出文件")
+    public void exportDownload(@PathVariable String jobId, HttpServletResponse response){
+        log.info("下载导出文件:{}",jobId);
+        reportExportService.download(jobId,response);
+    }
+
 }
@@ -1,9 +1,11 @@
 package com.sky.controller.admin;
 
 import com.sky.result.Result;
+import com.sky.service.LiveMetricsService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
+import com.sky.vo.LiveMetricsVO;
 import com.sky.vo.OrderOverViewVO;
 import com.sky.vo.SetmealOverViewVO;
 
@@ -28,6 +30,9 @@ public class WorkspaceController {
     @Autowired
     private WorkspaceService workspaceService;
 
+    @Autowired
+    private LiveMetricsService liveMetricsService;
+
     @GetMapping("/businessData")
     @Operation(summary = "今日运营数据")
     public Result<BusinessDataVO> getBusinessData(){
@@ -59,4 +64,11 @@ public class WorkspaceController {
         OrderOverViewVO orderOverViewVO = workspaceService.getOverviewOrders();
         return Result.success(orderOverViewVO);
     }
+
+    @GetMapping("/liveMetrics")
+    @Operation(summary = "工作台实时数据")
+    //页面打开时获取一次，之后通过WebSocket接收type为3的增量推送
+    public Result<LiveMetricsVO> getLiveMetrics(){
+        return Result.success(liveMetricsService.getMetrics());
+    }
 }
@@ -1,6 +1,8 @@
 package com.sky.controller.user;
 
 
+import com.sky.annotation.ResponseCache;
+import com.sky.constant.CacheConstant;
 import com.sky.entity.Category;
 import com.sky.result.Result;
 import com.sky.service.CategoryService;
@@ -28,6 +30,7 @@ public class CategoryController {
 
     @GetMapping("/list")
     @Operation(summary = "获取分类列表")
+    @ResponseCache(name = CacheConstant.RESPONSE_CATEGORY, params = "type")
     public Result<List<Category>> getList(Integer type){
         log.info("获取分类列表:{}", (type != null && type == 1) ? "商品" : "套餐" );
         List<Category> list = categoryService.list(type);
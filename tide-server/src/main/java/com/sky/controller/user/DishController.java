@@ -1,10 +1,8 @@
 package com.sky.controller.user;
 
 
-import com.sky.constant.StatusConstant;
-import com.sky.entity.Dish;
 import com.sky.result.Result;
-import com.sky.service.DishService;
+import com.sky.service.MenuCacheService;
 import com.sky.vo.DishVO;
 
 import io.swagger.v3.oas.annotations.Operation;
@@ -12,7 +10,6 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -27,35 +24,15 @@ import java.util.List;
 public class DishController {
 
     @Autowired
-    private DishService dishService;
-
-    @Autowired
-    private RedisTemplate redisTemplate;
+    private MenuCacheService menuCacheService;
 
     @GetMapping("/list")
     @Operation(summary ="根据分类id查询商品")
     //注意这里的请求参数名是categoryId，而不是id，要保持一致，接口文档中也提到了参数名称是categoryId
     public Result<List<DishVO>> list(Long categoryId) {
         log.info("商品分页查询:{}", categoryId);
-        //构造redis中的key，规则：dish_分类id
-        String key = "dish_" + categoryId;
-
-        //查询redis中是否存在商品数据
-        List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
-        if(list != null && list.size() > 0){
-            //如果存在，直接返回，无需查询数据库
-            return Result.success(list);
-        }
-
-        //同样考虑多条件查询
-        Dish dish = Dish.builder()
-                .categoryId(categoryId)
-                .status(StatusConstant.ENABLE)
-                .build();
-        //如果不存在，查询数据库，将查询到的数据放入redis中
-        list = dishService.dyList(dish);
-        redisTemplate.opsForValue().set(key, list);
-
+        //依次查询本地缓存、redis、数据库
+        List<DishVO> list = menuCacheService.getDishList(categoryId);
         return Result.success(list);
     }
 }
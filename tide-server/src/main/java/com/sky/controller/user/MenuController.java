@@ -0,0 +1,37 @@
+package com.sky.controller.user;
+
+import com.sky.service.MenuSnapshotService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+
+@RestController
+@RequestMapping("/user/menu")
+@Slf4j
+@Tag(name = "c端菜单快照接口")
+public class MenuController {
+
+    @Autowired
+    private MenuSnapshotService menuSnapshotService;
+
+    /**
+     * 获取完整菜单快照（分类、商品、口味、套餐）
+     * 客户端携带上次返回的ETag时，菜单未变化则返回304
+     * @param ifNoneMatch
+     * @param response
+     */
+    @GetMapping("/snapshot")
+    @Operation(summary = "获取菜单快照")
+    public void snapshot(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                         HttpServletResponse response) {
+        menuSnapshotService.writeSnapshot(ifNoneMatch, response);
+    }
+}
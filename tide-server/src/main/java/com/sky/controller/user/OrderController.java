@@ -1,6 +1,7 @@
 package com.sky.controller.user;
 
 
+import com.sky.annotation.Idempotent;
 import com.sky.config.RateLimit;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.dto.OrdersPaymentDTO;
@@ -18,6 +19,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.UUID;
+
 @RestController("userOrderController")
 @RequestMapping("/user/order")
 @Tag(name = "c端订单接口")
@@ -27,10 +30,22 @@ public class OrderController {
     @Autowired
     private OrderService orderService;
 
+    /**
+     * 获取下单令牌
+     * 下单时放在请求头Idempotency-Key中，同一令牌重复提交只会生成一个订单
+     * @return
+     */
+    @GetMapping("/submitToken")
+    @Operation(summary = "获取下单令牌")
+    public Result<String> submitToken(){
+        return Result.success(UUID.randomUUID().toString());
+    }
+
     @PostMapping("/submit")
     @Operation(summary = "用户下单")
     @RateLimit(key = "order:submit:{userId}", limit = 5, windowSeconds = 60,
             message = "每分钟最多下单5次，请稍后再试")
+    @Idempotent(key = "order:idempotent")
     public Result<OrderSubmitVO> submit(@RequestBody OrdersSubmitDTO ordersSubmitDTO){
         log.info("用户下单:{}",ordersSubmitDTO);
         OrderSubmitVO orderSubmitVO = orderService.submitOrder(ordersSubmitDTO);
@@ -1,6 +1,8 @@
 package com.sky.controller.user;
 
 
+import com.sky.annotation.ResponseCache;
+import com.sky.constant.CacheConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.entity.Setmeal;
 import com.sky.result.Result;
@@ -12,7 +14,6 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -34,9 +35,9 @@ public class SetmealController {
         this.setmealService = setmealService;
     }
 
-    @Cacheable(cacheNames = "setmealCache",key = "#categoryId") //key现在为 setmealCache:1
     @RequestMapping("/list")
     @Operation(summary = "根据分类id查询套餐")
+    @ResponseCache(name = CacheConstant.RESPONSE_SETMEAL, params = "categoryId")
     public Result<List<Setmeal>> list(Long categoryId){
         log.info("根据分类id查询套餐：{}",categoryId);
 
@@ -0,0 +1,222 @@
+package com.sky.interceptor;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.constant.MessageConstant;
+import com.sky.properties.ConcurrencyLimitProperties;
+import com.sky.result.Result;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并发限制拦截器
+ * 按接口分组限制同时处理的请求数，超过上限的请求直接返回503，不再占用Tomcat线程等待数据库，
+ * 上限按AIMD自动调整：并发接近上限时，请求耗时超过阈值或出现5xx按比例下调，
+ * 每正常完成相当于当前上限数量的请求才加一，并且下调后的一个耗时阈值内不上调，
+ * 避免同一分组中的快请求把上限推高，抵消慢请求带来的下调；
+ * 并发不到上限一半时，个别慢请求不是过载，不下调，上限逐步恢复到初始值。
+ * 导出、下载和调用外部接口的请求本身就慢，耗时不参与判断，只看是否出现5xx。
+ * 支付回调和管理端订单接口单独分组，并且有更高的最小上限，用户端过载时不受影响
+ */
+@Component
+@Slf4j
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    //请求属性：本次请求占用的分组
+    private static final String LIMITER_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".limiter";
+
+    //请求属性：开始处理的时间
+    private static final String START_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".start";
+
+    private static final String[] PRIORITY_PATTERNS = {"/notify/paySuccess", "/admin/order/**"};
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Autowired
+    private ConcurrencyLimitProperties concurrencyLimitProperties;
+
+    private AimdLimiter priorityLimiter;
+    private AimdLimiter adminLimiter;
+    private AimdLimiter userLimiter;
+    private AimdLimiter otherLimiter;
+
+    @PostConstruct
+    public void init() {
+        priorityLimiter = new AimdLimiter("priority", Math.max(concurrencyLimitProperties.getPriorityMinLimit(),
+                concurrencyLimitProperties.getInitialLimit()), concurrencyLimitProperties.getPriorityMinLimit());
+        adminLimiter = new AimdLimiter("admin", concurrencyLimitProperties.getInitialLimit(), concurrencyLimitProperties.getMinLimit());
+        userLimiter = new AimdLimiter("user", concurrencyLimitProperties.getInitialLimit(), concurrencyLimitProperties.getMinLimit());
+        otherLimiter = new AimdLimiter("other", concurrencyLimitProperties.getInitialLimit(), concurrencyLimitProperties.getMinLimit());
+    }
+
+    /**
+     * 占用所属分组的并发名额，名额用完时直接返回503
+     *
+     * @param request
+     * @param response
+     * @param handler
+     * @return
+     * @throws Exception
+     */
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!concurrencyLimitProperties.isEnabled()) {
+            return true;
+        }
+
+        AimdLimiter limiter = resolveLimiter(request.getRequestURI());
+        if (!limiter.tryAcquire()) {
+            log.warn("接口分组{}并发已达上限{}，拒绝请求：{}", limiter.name, limiter.limit, request.getRequestURI());
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write(JSON.toJSONString(Result.error(MessageConstant.SERVER_BUSY)));
+            return false;
+        }
+        request.setAttribute(LIMITER_ATTRIBUTE, limiter);
+        request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * 释放并发名额，并根据本次请求的耗时调整上限
+     *
+     * @param request
+     * @param response
+     * @param handler
+     * @param ex
+     * @throws Exception
+     */
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
+        Object limiter = request.getAttribute(LIMITER_ATTRIBUTE);
+        if (!(limiter instanceof AimdLimiter)) {
+            return;
+        }
+        long costMs = (System.nanoTime() - (Long) request.getAttribute(START_ATTRIBUTE)) / 1_000_000;
+        boolean overloaded = ex != null || response.getStatus() >= 500
+                || (costMs > concurrencyLimitProperties.getLatencyThresholdMs() && !isLatencyExcluded(request.getRequestURI()));
+        ((AimdLimiter) limiter).release(overloaded);
+    }
+
+    private boolean isLatencyExcluded(String uri) {
+        for (String pattern : concurrencyLimitProperties.getLatencyExcludePatterns()) {
+            if (pathMatcher.match(pattern, uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private AimdLimiter resolveLimiter(String uri) {
+        for (String pattern : PRIORITY_PATTERNS) {
+            if (pathMatcher.match(pattern, uri)) {
+                return priorityLimiter;
+            }
+        }
+        if (uri.startsWith("/admin/")) {
+            return adminLimiter;
+        }
+        if (uri.startsWith("/user/")) {
+            return userLimiter;
+        }
+        return otherLimiter;
+    }
+
+    /**
+     * 单个接口分组的并发限制
+     * 占用和释放名额只做CAS，调整上限时才加锁
+     */
+    private class AimdLimiter {
+
+        private final String name;
+        private final int minLimit;
+        private final int initialLimit;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile int limit;
+
+        //上次上调之后正常完成的请求数，达到当前上限时加一
+        private final AtomicInteger successes = new AtomicInteger();
+
+        //上一次下调上限的时间，同一批慢请求只下调一次，下调后一段时间内不上调
+        private volatile long lastBackoffNanos;
+
+        AimdLimiter(String name, int initialLimit, int minLimit) {
+            this.name = name;
+            this.minLimit = minLimit;
+            this.initialLimit = initialLimit;
+            this.limit = initialLimit;
+            this.lastBackoffNanos = System.nanoTime() - concurrencyLimitProperties.getLatencyThresholdMs() * 1_000_000;
+        }
+
+        boolean tryAcquire() {
+            int current;
+            do {
+                current = inFlight.get();
+                if (current >= limit) {
+                    return false;
+                }
+            } while (!inFlight.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void release(boolean overloaded) {
+            int current = inFlight.getAndDecrement();
+            if (current * 2 < limit) {
+                //并发不到上限一半，慢请求或5xx与并发无关，不下调；上限低于初始值时逐步恢复
+                if (limit < initialLimit && !inBackoffWindow(System.nanoTime())) {
+                    recover();
+                }
+            } else if (overloaded) {
+                backoff();
+            } else if (limit < concurrencyLimitProperties.getMaxLimit() && !inBackoffWindow(System.nanoTime())) {
+                //每个上限数量的请求只加一
+                if (successes.incrementAndGet() >= limit) {
+                    increase();
+                }
+            }
+        }
+
+        private synchronized void recover() {
+            if (limit < initialLimit) {
+                successes.set(0);
+                limit++;
+            }
+        }
+
+        private boolean inBackoffWindow(long now) {
+            return now - lastBackoffNanos < concurrencyLimitProperties.getLatencyThresholdMs() * 1_000_000;
+        }
+
+        private synchronized void increase() {
+            if (successes.get() >= limit && limit < concurrencyLimitProperties.getMaxLimit()) {
+                successes.set(0);
+                limit++;
+            }
+        }
+
+        private synchronized void backoff() {
+            long now = System.nanoTime();
+            //下调后，在一个耗时阈值内完成的慢请求是下调前进入的，不再重复下调
+            if (inBackoffWindow(now)) {
+                return;
+            }
+            lastBackoffNanos = now;
+            successes.set(0);
+            int newLimit = Math.max(minLimit, (int) (limit * concurrencyLimitProperties.getBackoffRatio()));
+            if (newLimit != limit) {
+                log.info("接口分组{}出现过载，并发上限由{}下调为{}", name, limit, newLimit);
+                limit = newLimit;
+            }
+        }
+    }
+}
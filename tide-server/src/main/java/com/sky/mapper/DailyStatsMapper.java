@@ -0,0 +1,105 @@
+package com.sky.mapper;
+
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.DailyDishSales;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.MapKey;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Mapper
+public interface DailyStatsMapper {
+
+    /**
+     * 累加某一天的营业数据，当天没有记录时插入
+     * @param statDate
+     * @param orderCount
+     * @param validOrderCount
+     * @param turnover
+     * @param newUserCount
+     */
+    void incrBusinessStats(@Param("statDate") LocalDate statDate,
+                           @Param("orderCount") int orderCount,
+                           @Param("validOrderCount") int validOrderCount,
+                           @Param("turnover") BigDecimal turnover,
+                           @Param("newUserCount") int newUserCount);
+
+    /**
+     * 批量累加某一天的商品销量
+     * @param dishSalesList
+     */
+    void incrDishSales(List<DailyDishSales> dishSalesList);
+
+    /**
+     * 查询日期范围内每天的营业数据
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select * from daily_business_stats where stat_date between #{begin} and #{end} order by stat_date")
+    List<DailyBusinessStats> listByDateRange(LocalDate begin, LocalDate end);
+
+    /**
+     * 统计某一天之前的用户总数
+     * @param date
+     * @return
+     */
+    @Select("select coalesce(sum(new_user_count), 0) from daily_business_stats where stat_date < #{date}")
+    Integer sumNewUserBefore(LocalDate date);
+
+    /**
+     * 查询日期范围内销量排名前几的商品
+     * @param begin
+     * @param end
+     * @param limit
+     * @return
+     */
+    @MapKey("name")
+    List<Map<String, Object>> getTopSales(@Param("begin") LocalDate begin,
+                                          @Param("end") LocalDate end,
+                                          @Param("limit") int limit);
+
+    /**
+     * 删除日期范围内的营业数据汇总
+     * @param begin
+     * @param end
+     */
+    @Delete("delete from daily_business_stats where stat_date between #{begin} and #{end}")
+    void deleteBusinessStats(LocalDate begin, LocalDate end);
+
+    /**
+     * 删除日期范围内的商品销量汇总
+     * @param begin
+     * @param end
+     */
+    @Delete("delete from daily_dish_sales where stat_date between #{begin} and #{end}")
+    void deleteDishSales(LocalDate begin, LocalDate end);
+
+    /**
+     * 根据订单表重新统计时间范围内的订单数和营业额
+     * @param beginTime 包含
+     * @param endTime 不包含
+     */
+    void rebuildOrderStats(@Param("beginTime") LocalDateTime beginTime, @Param("endTime") LocalDateTime endTime);
+
+    /**
+     * 根据用户表重新统计时间范围内的新增用户数
+     * @param beginTime 包含
+     * @param endTime 不包含
+     */
+    void rebuildUserStats(@Param("beginTime") LocalDateTime beginTime, @Param("endTime") LocalDateTime endTime);
+
+    /**
+     * 根据订单明细重新统计时间范围内的商品销量
+     * @param beginTime 包含
+     * @param endTime 不包含
+     */
+    void rebuildDishSales(@Param("beginTime") LocalDateTime beginTime, @Param("endTime") LocalDateTime endTime);
+}
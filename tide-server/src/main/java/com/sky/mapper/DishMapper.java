@@ -13,6 +13,7 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface DishMapper {
@@ -61,6 +62,13 @@ public interface DishMapper {
      */
     void deleteByIds(List<Long> ids);
 
+    /**
+     * 根据ids查询商品所属的分类id（去重）
+     * @param ids
+     * @return
+     */
+    List<Long> getCategoryIdsByIds(List<Long> ids);
+
     /**
      * 修改商品
      * @param dish
@@ -74,4 +82,11 @@ public interface DishMapper {
      * @return
      */
     List<Dish> list(Dish dish);
+
+    /**
+     * 按状态统计商品数量
+     * @return
+     */
+    @Select("select status, count(id) as count from dish group by status")
+    List<Map<String, Object>> countGroupByStatus();
 }
@@ -23,4 +23,11 @@ public interface OrderDetailMapper {
      */
     @Select("select * from order_detail where order_id = #{id}")
     List<OrderDetail> getByOrderId(Long id);
+
+    /**
+     * 根据订单id集合批量查询详细订单表
+     * @param orderIds
+     * @return
+     */
+    List<OrderDetail> getByOrderIds(List<Long> orderIds);
 }
@@ -44,6 +44,26 @@ public interface OrderMapper {
      */
     Page<Orders> pageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
 
+    /**
+     * 游标分页查询订单，按下单时间和id倒序
+     * @param ordersPageQueryDTO
+     * @param lastOrderTime 上一页最后一个订单的下单时间，第一页为null
+     * @param lastId 上一页最后一个订单的id，第一页为null
+     * @param limit
+     * @return
+     */
+    List<Orders> seekQuery(@Param("query") OrdersPageQueryDTO ordersPageQueryDTO,
+                           @Param("lastOrderTime") LocalDateTime lastOrderTime,
+                           @Param("lastId") Long lastId,
+                           @Param("limit") int limit);
+
+    /**
+     * 统计分页查询条件下的订单总数
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    long countPageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
+
 
     /**
      * 根据id查询订单
@@ -59,15 +79,6 @@ public interface OrderMapper {
      */
     OrderStatisticsVO statistics();
 
-    /**
-     * 查询超时订单
-     * @param status
-     * @param orderTime
-     * @return
-     */
-    @Select("select * from orders where status = #{status} and order_time < #{orderTime}")
-    List<Orders> getByStatusAndOrderTimeLT(Integer status, LocalDateTime orderTime);
-
     /**
      * 根据动态条件统计数量
      * @param map
@@ -110,10 +121,59 @@ public interface OrderMapper {
      */
     OrderOverViewVO getOverview();
 
+    /**
+     * 只有订单仍处于指定状态时才更新，用于并发的状态流转
+     * @param orders
+     * @param expectedStatus
+     * @return 更新的行数，0表示订单状态已经被修改
+     */
+    int updateByIdAndStatus(@Param("orders") Orders orders, @Param("expectedStatus") Integer expectedStatus);
+
+    /**
+     * 分批查询指定状态、下单时间早于orderTime的订单，只返回id、下单时间和金额
+     * @param status
+     * @param orderTime
+     * @param lastOrderTime 上一批最后一个订单的下单时间，第一批为null
+     * @param lastId 上一批最后一个订单的id，第一批为null
+     * @param limit
+     * @return
+     */
+    List<Orders> listByStatusAndOrderTimeLT(@Param("status") Integer status,
+                                            @Param("orderTime") LocalDateTime orderTime,
+                                            @Param("lastOrderTime") LocalDateTime lastOrderTime,
+                                            @Param("lastId") Long lastId,
+                                            @Param("limit") int limit);
+
+    /**
+     * 批量修改订单状态，只更新仍处于expectedStatus的订单
+     * @param ids
+     * @param expectedStatus
+     * @param orders 需要更新的状态和字段
+     * @return 更新的行数
+     */
+    int updateStatusByIds(@Param("ids") List<Long> ids,
+                          @Param("expectedStatus") Integer expectedStatus,
+                          @Param("orders") Orders orders);
+
+    /**
+     * 在指定的订单中查询处于某个状态的订单id，并加行锁，需要在事务中调用
+     * @param ids
+     * @param status
+     * @return
+     */
+    List<Long> lockIdsByIdsAndStatus(@Param("ids") List<Long> ids, @Param("status") Integer status);
+
     /**
      * 携带版本号的订单更新
      * @param orders
      * @return
      */
     int updateWithVersion(Orders orders);
+
+    /**
+     * 按状态统计订单数量
+     * @return
+     */
+    @Select("select status, count(id) as count from orders group by status")
+    List<Map<String, Object>> countGroupByStatus();
 }
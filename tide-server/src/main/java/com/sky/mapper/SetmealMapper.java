@@ -12,6 +12,7 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
 
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface SetmealMapper {
@@ -74,4 +75,11 @@ public interface SetmealMapper {
     @Select("select sd.name,sd.copies,d.image,d.description from dish d left join setmeal_dish sd on d.id = sd.dish_id\n" +
             "where setmeal_id = #{setmealId};")
     List<DishItemVO> getBySetmealId(Long setmealId);
+
+    /**
+     * 按状态统计套餐数量
+     * @return
+     */
+    @Select("select status, count(id) as count from setmeal group by status")
+    List<Map<String, Object>> countGroupByStatus();
 }
@@ -0,0 +1,41 @@
+package com.sky.service;
+
+import com.sky.entity.Orders;
+import com.sky.entity.User;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DailyStatsService {
+
+    /**
+     * 用户下单，累加下单日期的订单总数
+     * @param orders
+     */
+    void orderSubmitted(Orders orders);
+
+    /**
+     * 订单完成，累加下单日期的有效订单数、营业额和商品销量
+     * @param orders 完成前查询到的订单，需要包含id、下单时间和金额
+     */
+    void orderCompleted(Orders orders);
+
+    /**
+     * 多个订单完成，按下单日期合并后累加
+     * @param ordersList 完成前查询到的订单，需要包含id、下单时间和金额
+     */
+    void ordersCompleted(List<Orders> ordersList);
+
+    /**
+     * 新用户注册，累加注册日期的新增用户数
+     * @param user
+     */
+    void userRegistered(User user);
+
+    /**
+     * 根据原始数据重算日期范围内的汇总数据
+     * @param begin
+     * @param end
+     */
+    void reconcile(LocalDate begin, LocalDate end);
+}
@@ -0,0 +1,48 @@
+package com.sky.service;
+
+import com.sky.entity.Orders;
+import com.sky.entity.User;
+import com.sky.vo.LiveMetricsVO;
+
+import java.util.List;
+
+public interface LiveMetricsService {
+
+    /**
+     * 订单状态变化，下单时oldStatus为null
+     * @param orders 订单，需要包含下单时间和金额
+     * @param oldStatus
+     * @param newStatus
+     */
+    void orderStatusChanged(Orders orders, Integer oldStatus, Integer newStatus);
+
+    /**
+     * 多个订单发生相同的状态变化，同一下单日期的订单合并为一条增量
+     * @param ordersList 订单，需要包含下单时间和金额
+     * @param oldStatus
+     * @param newStatus
+     */
+    void orderStatusChanged(List<Orders> ordersList, Integer oldStatus, Integer newStatus);
+
+    /**
+     * 新用户注册
+     * @param user
+     */
+    void userRegistered(User user);
+
+    /**
+     * 获取当前的实时数据
+     * @return
+     */
+    LiveMetricsVO getMetrics();
+
+    /**
+     * 将累计的增量推送给本节点的工作台
+     */
+    void flush();
+
+    /**
+     * 根据汇总表和工作台计数重新加载，跨天时从零开始统计
+     */
+    void reload();
+}
@@ -0,0 +1,28 @@
+package com.sky.service;
+
+import com.sky.vo.DishVO;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface MenuCacheService {
+
+    /**
+     * 根据分类id查询起售中的商品和口味
+     * 查询顺序：本地缓存 -> Redis -> 数据库
+     * @param categoryId
+     * @return
+     */
+    List<DishVO> getDishList(Long categoryId);
+
+    /**
+     * 清理指定分类的商品缓存，并通知所有节点清理本地缓存
+     * @param categoryIds
+     */
+    void evictDish(Collection<Long> categoryIds);
+
+    /**
+     * 清理全部商品缓存，并通知所有节点清理本地缓存
+     */
+    void evictAllDish();
+}
@@ -0,0 +1,18 @@
+package com.sky.service;
+
+import javax.servlet.http.HttpServletResponse;
+
+public interface MenuSnapshotService {
+
+    /**
+     * 输出菜单快照，客户端携带的ETag与当前快照一致时返回304
+     * @param ifNoneMatch 请求头If-None-Match
+     * @param response
+     */
+    void writeSnapshot(String ifNoneMatch, HttpServletResponse response);
+
+    /**
+     * 菜单数据发生变化，递增版本号并通知所有节点重建快照
+     */
+    void refresh();
+}
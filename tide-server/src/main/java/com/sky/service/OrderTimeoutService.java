@@ -0,0 +1,31 @@
+package com.sky.service;
+
+import com.sky.entity.Orders;
+
+public interface OrderTimeoutService {
+
+    /**
+     * 下单后加入延时队列，到期未支付自动取消
+     * @param orders
+     */
+    void schedule(Orders orders);
+
+    /**
+     * 支付成功后从延时队列中移除
+     * @param orderId
+     */
+    void remove(Long orderId);
+
+    /**
+     * 取消延时队列中已经到期的订单
+     * @return 本次取消的订单数量
+     */
+    int processExpired();
+
+    /**
+     * 取消超时未支付的订单，订单已经不是待付款状态时不做处理
+     * @param orderId
+     * @return 是否取消成功
+     */
+    boolean cancelTimeoutOrder(Long orderId);
+}
@@ -11,6 +11,25 @@ public interface RateLimiterService {
      */
     boolean isAllowed(String key, int windowSeconds, int limit);
 
+    /**
+     * 使用滑动窗口计数限流
+     * @param key 限流标识
+     * @param windowSeconds 窗口期(秒)
+     * @param limit 限流阈值
+     * @return 是否允许访问
+     */
+    boolean isAllowedBySlidingWindow(String key, int windowSeconds, int limit);
+
+    /**
+     * 使用GCRA算法限流
+     * @param key 限流标识
+     * @param windowSeconds 窗口期(秒)
+     * @param limit 窗口期内最大请求数
+     * @param requested 请求令牌数
+     * @return 是否允许访问
+     */
+    boolean isAllowedByGcra(String key, int windowSeconds, int limit, int requested);
+
     /**
      * 使用令牌桶算法限流
      * @param key 限流标识
@@ -20,4 +39,15 @@ public interface RateLimiterService {
      * @return 是否允许访问
      */
     boolean isAllowedByTokenBucket(String key, int capacity, int rate, int requested);
+
+    /**
+     * 使用令牌桶算法限流，令牌从Redis批量租借后在本地扣减
+     * @param key 限流标识
+     * @param capacity 令牌桶容量
+     * @param rate 令牌填充速率(每秒)
+     * @param requested 请求令牌数
+     * @param leaseSize 每次租借的令牌数
+     * @return 是否允许访问
+     */
+    boolean isAllowedByLeasedTokenBucket(String key, int capacity, int rate, int requested, int leaseSize);
 }
@@ -0,0 +1,36 @@
+package com.sky.service;
+
+import com.sky.vo.ReportExportJobVO;
+
+import javax.servlet.http.HttpServletResponse;
+import java.time.LocalDate;
+
+public interface ReportExportService {
+
+    /**
+     * 提交导出任务
+     * @param begin
+     * @param end
+     * @return
+     */
+    ReportExportJobVO submit(LocalDate begin, LocalDate end);
+
+    /**
+     * 查询导出任务状态
+     * @param jobId
+     * @return
+     */
+    ReportExportJobVO getJob(String jobId);
+
+    /**
+     * 下载导出文件
+     * @param jobId
+     * @param response
+     */
+    void download(String jobId, HttpServletResponse response);
+
+    /**
+     * 清理过期的导出任务和文件
+     */
+    void cleanExpired();
+}
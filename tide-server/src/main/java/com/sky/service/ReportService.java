@@ -4,6 +4,8 @@ import com.sky.dto.DataOverViewQueryDTO;
 import com.sky.vo.*;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
@@ -40,7 +42,18 @@ public interface ReportService {
 
     /**
      * 数据导出
-     * @return
+     * @param begin
+     * @param end
+     * @param response
+     */
+    void export(LocalDate begin, LocalDate end, HttpServletResponse response);
+
+    /**
+     * 将日期范围内的营业数据写入输出流
+     * @param begin
+     * @param end
+     * @param out
+     * @throws IOException
      */
-    void export(HttpServletResponse response);
+    void writeBusinessReport(LocalDate begin, LocalDate end, OutputStream out) throws IOException;
 }
@@ -0,0 +1,43 @@
+package com.sky.service;
+
+import java.util.Collection;
+
+public interface ResponseCacheService {
+
+    /**
+     * 查询缓存的响应字节，依次查询本地缓存、Redis
+     * @param key
+     * @return 未命中时返回null
+     */
+    byte[] get(String key);
+
+    /**
+     * 缓存响应字节
+     * @param name 缓存分组
+     * @param key
+     * @param body
+     * @param ttlSeconds
+     */
+    void put(String name, String key, byte[] body, long ttlSeconds);
+
+    /**
+     * 清理整个分组的响应缓存，并通知所有节点
+     * @param name
+     */
+    void evict(String name);
+
+    /**
+     * 清理分组内指定参数的响应缓存，并通知所有节点
+     * @param name
+     * @param params 参数部分，例如categoryId=1
+     */
+    void evict(String name, Collection<String> params);
+
+    /**
+     * 构造缓存key
+     * @param name
+     * @param params
+     * @return
+     */
+    String buildKey(String name, String params);
+}
@@ -28,4 +28,43 @@ public interface ShoppingCartService {
      * @param shoppingCartDTO
      */
     void deleteOnlyShoppingCart(ShoppingCartDTO shoppingCartDTO);
+
+    /**
+     * 查询指定用户的购物车
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> getCart(Long userId);
+
+    /**
+     * 清空指定用户的购物车
+     * @param userId
+     */
+    void cleanCart(Long userId);
+
+    /**
+     * 向指定用户的购物车批量添加商品，数量在原有基础上累加
+     * @param userId
+     * @param shoppingCartList
+     */
+    void addItems(Long userId, List<ShoppingCart> shoppingCartList);
+
+    /**
+     * 取出一批待回写数据库的用户id
+     * @param count
+     * @return
+     */
+    List<Long> popDirtyUserIds(int count);
+
+    /**
+     * 将指定用户的购物车写回数据库
+     * @param userId
+     */
+    void flushCart(Long userId);
+
+    /**
+     * 标记用户购物车需要回写数据库
+     * @param userId
+     */
+    void markDirty(Long userId);
 }
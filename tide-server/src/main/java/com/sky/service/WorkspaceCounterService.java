@@ -0,0 +1,67 @@
+package com.sky.service;
+
+import com.sky.vo.DishOverViewVO;
+import com.sky.vo.OrderOverViewVO;
+import com.sky.vo.OrderStatisticsVO;
+import com.sky.vo.SetmealOverViewVO;
+
+public interface WorkspaceCounterService {
+
+    /**
+     * 商品状态变化，新增时oldStatus为null，删除时newStatus为null
+     * @param oldStatus
+     * @param newStatus
+     */
+    void dishChanged(Integer oldStatus, Integer newStatus);
+
+    /**
+     * 套餐状态变化，新增时oldStatus为null，删除时newStatus为null
+     * @param oldStatus
+     * @param newStatus
+     */
+    void setmealChanged(Integer oldStatus, Integer newStatus);
+
+    /**
+     * 订单状态变化，下单时oldStatus为null
+     * @param oldStatus
+     * @param newStatus
+     */
+    void orderChanged(Integer oldStatus, Integer newStatus);
+
+    /**
+     * 多个订单发生相同的状态变化，用于定时任务批量处理
+     * @param oldStatus
+     * @param newStatus
+     * @param count 订单数量
+     */
+    void orderChanged(Integer oldStatus, Integer newStatus, int count);
+
+    /**
+     * 商品总览
+     * @return
+     */
+    DishOverViewVO getDishOverview();
+
+    /**
+     * 套餐总览
+     * @return
+     */
+    SetmealOverViewVO getSetmealOverview();
+
+    /**
+     * 订单总览
+     * @return
+     */
+    OrderOverViewVO getOrderOverview();
+
+    /**
+     * 待接单、待派送、派送中的订单数量
+     * @return
+     */
+    OrderStatisticsVO getOrderStatistics();
+
+    /**
+     * 根据数据库重新统计全部计数
+     */
+    void reconcile();
+}
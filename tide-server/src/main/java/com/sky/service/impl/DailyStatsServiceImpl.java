@@ -0,0 +1,163 @@
+package com.sky.service.impl;
+
+import com.sky.entity.DailyDishSales;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.entity.User;
+import com.sky.mapper.DailyStatsMapper;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.service.DailyStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * 每日统计汇总
+ * 订单状态变化时增量累加，汇总表的写入放在业务事务提交之后，
+ * 避免所有下单请求在同一天的汇总行上排队等待事务结束。
+ * 累加失败只记录日志，由每晚的重算任务修正
+ */
+@Service
+@Slf4j
+public class DailyStatsServiceImpl implements DailyStatsService {
+
+    @Autowired
+    private DailyStatsMapper dailyStatsMapper;
+
+    @Autowired
+    private OrderDetailMapper orderDetailMapper;
+
+    /**
+     * 用户下单
+     * @param orders
+     */
+    @Override
+    public void orderSubmitted(Orders orders) {
+        LocalDate statDate = orders.getOrderTime().toLocalDate();
+        afterCommit(() -> dailyStatsMapper.incrBusinessStats(statDate, 1, 0, BigDecimal.ZERO, 0));
+    }
+
+    /**
+     * 订单完成
+     * @param orders
+     */
+    @Override
+    public void orderCompleted(Orders orders) {
+        ordersCompleted(Collections.singletonList(orders));
+    }
+
+    /**
+     * 批量订单完成
+     * 每个下单日期累加一次汇总行，全部订单的明细一次查出后按日期和名称合并
+     * @param ordersList
+     */
+    @Override
+    public void ordersCompleted(List<Orders> ordersList) {
+        if (ordersList == null || ordersList.isEmpty()) {
+            return;
+        }
+        Map<Long, LocalDate> orderDateMap = new HashMap<>();
+        Map<LocalDate, BigDecimal> turnoverMap = new TreeMap<>();
+        Map<LocalDate, Integer> countMap = new TreeMap<>();
+        for (Orders orders : ordersList) {
+            LocalDate statDate = orders.getOrderTime().toLocalDate();
+            BigDecimal amount = orders.getAmount() != null ? orders.getAmount() : BigDecimal.ZERO;
+            orderDateMap.put(orders.getId(), statDate);
+            turnoverMap.merge(statDate, amount, BigDecimal::add);
+            countMap.merge(statDate, 1, Integer::sum);
+        }
+        afterCommit(() -> {
+            countMap.forEach((statDate, count) ->
+                    dailyStatsMapper.incrBusinessStats(statDate, 0, count, turnoverMap.get(statDate), 0));
+
+            //同一商品不同口味在明细中是多条，先按日期和名称合并
+            Map<LocalDate, Map<String, Integer>> salesMap = orderDetailMapper.getByOrderIds(new ArrayList<>(orderDateMap.keySet())).stream()
+                    .filter(detail -> detail.getName() != null)
+                    .collect(Collectors.groupingBy(detail -> orderDateMap.get(detail.getOrderId()), TreeMap::new,
+                            Collectors.groupingBy(OrderDetail::getName, TreeMap::new,
+                                    Collectors.summingInt(detail -> Objects.requireNonNullElse(detail.getNumber(), 0)))));
+            if (salesMap.isEmpty()) {
+                return;
+            }
+            List<DailyDishSales> dishSalesList = new ArrayList<>();
+            salesMap.forEach((statDate, sales) -> sales.forEach((name, number) ->
+                    dishSalesList.add(DailyDishSales.builder()
+                            .statDate(statDate)
+                            .name(name)
+                            .number(number)
+                            .build())));
+            dailyStatsMapper.incrDishSales(dishSalesList);
+        });
+    }
+
+    /**
+     * 新用户注册
+     * @param user
+     */
+    @Override
+    public void userRegistered(User user) {
+        LocalDateTime createTime = user.getCreateTime() != null ? user.getCreateTime() : LocalDateTime.now();
+        LocalDate statDate = createTime.toLocalDate();
+        afterCommit(() -> dailyStatsMapper.incrBusinessStats(statDate, 0, 0, BigDecimal.ZERO, 1));
+    }
+
+    /**
+     * 重算汇总数据
+     * 先删除再按原始表重新插入，原始表中没有数据的日期也会被清零
+     * @param begin
+     * @param end
+     */
+    @Override
+    @Transactional
+    public void reconcile(LocalDate begin, LocalDate end) {
+        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
+        LocalDateTime endTime = LocalDateTime.of(end.plusDays(1), LocalTime.MIN);
+
+        dailyStatsMapper.deleteBusinessStats(begin, end);
+        dailyStatsMapper.deleteDishSales(begin, end);
+        dailyStatsMapper.rebuildOrderStats(beginTime, endTime);
+        dailyStatsMapper.rebuildUserStats(beginTime, endTime);
+        dailyStatsMapper.rebuildDishSales(beginTime, endTime);
+    }
+
+    /**
+     * 事务提交后执行，没有事务时立即执行
+     * @param action
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runQuietly(action);
+                }
+            });
+        } else {
+            runQuietly(action);
+        }
+    }
+
+    private void runQuietly(Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            log.error("累加每日统计数据失败，等待夜间重算修正", e);
+        }
+    }
+}
@@ -14,6 +14,7 @@ import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealDishMapper;
 import com.sky.result.PageResult;
 import com.sky.service.DishService;
+import com.sky.service.WorkspaceCounterService;
 import com.sky.vo.DishVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
@@ -23,6 +24,8 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -37,6 +40,9 @@ public class DishServiceImpl implements DishService {
     @Autowired
     private SetmealDishMapper setMealDishMapper;
 
+    @Autowired
+    private WorkspaceCounterService workspaceCounterService;
+
 
     /**
      * 新增商品和口味
@@ -58,6 +64,7 @@ public class DishServiceImpl implements DishService {
 
         //向商品表插入数据（1条） 这里不需要插入dto，因为dto中包含了口味对象，这里需要new一个对象即可
         dishMapper.insert(dish);
+        workspaceCounterService.dishChanged(null, dish.getStatus());
         //在这里保存商品的时候，就已经产生了dishId了
         //通过主键回显获得商品的dishId
         Long dishId = dish.getId();
@@ -100,12 +107,14 @@ public class DishServiceImpl implements DishService {
     @Override
     public void deleteBatch(List<Long> ids) {
         // 判断当前商品是否能够删除--是否存在起售中
+        List<Integer> statusList = new ArrayList<>(ids.size());
         for (Long id : ids) {
             Dish dish = dishMapper.getById(id);
             if(dish.getStatus() == StatusConstant.ENABLE){
                 //当前商品处于起售中,不能删除
                 throw new DeletionNotAllowedException(MessageConstant.DISH_ON_SALE);
             }
+            statusList.add(dish.getStatus());
         }
 
         // 判断当前商品是否能够删除--是否被套餐关联
@@ -129,6 +138,7 @@ public class DishServiceImpl implements DishService {
         //根据商品id集合批量删除关联的口味数据
         dishFlavorMapper.deleteByDishIds(ids);
 
+        statusList.forEach(status -> workspaceCounterService.dishChanged(status, null));
     }
 
     /**
@@ -138,11 +148,15 @@ public class DishServiceImpl implements DishService {
      */
     @Override
     public void startOrStop(Integer status, Long id) {
+        Dish dishDB = dishMapper.getById(id);
         Dish dish = Dish.builder()
                 .id(id)
                 .status(status)
                 .build();
         dishMapper.update(dish);
+        if (dishDB != null) {
+            workspaceCounterService.dishChanged(dishDB.getStatus(), status);
+        }
     }
 
     /**
@@ -174,8 +188,14 @@ public class DishServiceImpl implements DishService {
         Dish dish =new Dish();
         BeanUtils.copyProperties(dishDTO,dish);
 
+        //修改时可能同时修改了起售状态
+        Dish dishDB = dish.getStatus() != null ? dishMapper.getById(dish.getId()) : null;
+
         //修改商品表基本信息
         dishMapper.update(dish);
+        if (dishDB != null) {
+            workspaceCounterService.dishChanged(dishDB.getStatus(), dish.getStatus());
+        }
 
         //对于口味 直接删除再新加
         dishFlavorMapper.deleteByDishId(dishDTO.getId());
@@ -216,16 +236,20 @@ public class DishServiceImpl implements DishService {
     public List<DishVO> dyList(Dish dish) {
         List<Dish> dishList = dishMapper.list(dish);
 
-        List<DishVO> dishVOList = new ArrayList<>();
+        List<DishVO> dishVOList = new ArrayList<>(dishList.size());
+        if (dishList.isEmpty()) {
+            return dishVOList;
+        }
+
+        //一次性查询所有商品的口味，避免每个商品单独查询一次
+        List<Long> dishIds = dishList.stream().map(Dish::getId).collect(Collectors.toList());
+        Map<Long, List<DishFlavor>> flavorMap = dishFlavorMapper.getByDishIds(dishIds).stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
 
         for (Dish d : dishList) {
             DishVO dishVO = new DishVO();
             BeanUtils.copyProperties(d,dishVO);
-
-            //根据商品id查询对应的口味
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
-
-            dishVO.setFlavors(flavors);
+            dishVO.setFlavors(flavorMap.getOrDefault(d.getId(), new ArrayList<>()));
             dishVOList.add(dishVO);
         }
 
@@ -0,0 +1,371 @@
+package com.sky.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.entity.DailyBusinessStats;
+import com.sky.entity.Orders;
+import com.sky.entity.User;
+import com.sky.mapper.DailyStatsMapper;
+import com.sky.service.LiveMetricsService;
+import com.sky.service.WorkspaceCounterService;
+import com.sky.vo.LiveMetricsVO;
+import com.sky.vo.OrderStatisticsVO;
+import com.sky.websocket.WebSocketServer;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 工作台实时数据
+ * 每个节点在内存中维护今日的营业数据和待处理订单数量，订单状态变化时把增量发布到Redis频道，
+ * 所有节点收到后累加到内存，并定时把合并后的增量通过WebSocket推送给本节点的工作台，
+ * 工作台不再需要轮询接口重新统计。
+ * 内存数据会定期从汇总表和工作台计数重新加载，修正消息丢失带来的偏差
+ */
+@Service
+@Slf4j
+public class LiveMetricsServiceImpl implements LiveMetricsService, MessageListener {
+
+    //实时数据增量频道
+    public static final String LIVE_METRICS_CHANNEL = "sky:metrics:delta";
+
+    //推送给工作台的消息类型，1来单提醒，2催单，3实时数据
+    private static final int MESSAGE_TYPE = 3;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private DailyStatsMapper dailyStatsMapper;
+
+    @Autowired
+    private WorkspaceCounterService workspaceCounterService;
+
+    @Autowired
+    private WebSocketServer webSocketServer;
+
+    //当前统计的日期和数据，读写都在this上加锁
+    private LocalDate date = LocalDate.now();
+    private int orderCount;
+    private int validOrderCount;
+    private BigDecimal turnover = BigDecimal.ZERO;
+    private int newUsers;
+    private int toBeConfirmed;
+    private int confirmed;
+    private int deliveryInProgress;
+
+    //还没有推送的增量
+    private Delta unsent = new Delta();
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(LIVE_METRICS_CHANNEL));
+        try {
+            reload();
+        } catch (Exception e) {
+            log.warn("加载工作台实时数据失败，等待定时任务重新加载", e);
+        }
+    }
+
+    /**
+     * 订单状态变化
+     * 下单时订单总数加一，完成时有效订单数和营业额增加，待处理的订单数量随状态增减
+     * @param orders
+     * @param oldStatus
+     * @param newStatus
+     */
+    @Override
+    public void orderStatusChanged(Orders orders, Integer oldStatus, Integer newStatus) {
+        if (orders == null) {
+            return;
+        }
+        orderStatusChanged(Collections.singletonList(orders), oldStatus, newStatus);
+    }
+
+    /**
+     * 批量订单状态变化
+     * 按下单日期合并，每个日期只发布一条增量
+     * @param ordersList
+     * @param oldStatus
+     * @param newStatus
+     */
+    @Override
+    public void orderStatusChanged(List<Orders> ordersList, Integer oldStatus, Integer newStatus) {
+        if (ordersList == null || ordersList.isEmpty() || (oldStatus != null && oldStatus.equals(newStatus))) {
+            return;
+        }
+        Map<String, Delta> deltaMap = new LinkedHashMap<>();
+        for (Orders orders : ordersList) {
+            if (orders.getOrderTime() == null) {
+                continue;
+            }
+            Delta delta = deltaMap.computeIfAbsent(orders.getOrderTime().toLocalDate().toString(), date -> {
+                Delta d = new Delta();
+                d.setDate(date);
+                return d;
+            });
+            if (oldStatus == null) {
+                delta.orderCount++;
+            }
+            if (Orders.COMPLETED.equals(newStatus)) {
+                delta.validOrderCount++;
+                delta.turnover = delta.turnover.add(orders.getAmount() != null ? orders.getAmount() : BigDecimal.ZERO);
+            }
+            delta.addPending(oldStatus, -1);
+            delta.addPending(newStatus, 1);
+        }
+        deltaMap.values().forEach(this::publishAfterCommit);
+    }
+
+    /**
+     * 新用户注册
+     * @param user
+     */
+    @Override
+    public void userRegistered(User user) {
+        LocalDateTime createTime = user.getCreateTime() != null ? user.getCreateTime() : LocalDateTime.now();
+        Delta delta = new Delta();
+        delta.setDate(createTime.toLocalDate().toString());
+        delta.setNewUsers(1);
+        publishAfterCommit(delta);
+    }
+
+    /**
+     * 获取当前的实时数据
+     * @return
+     */
+    @Override
+    public synchronized LiveMetricsVO getMetrics() {
+        rollDate();
+        return snapshot();
+    }
+
+    /**
+     * 推送合并后的增量和当前数据
+     */
+    @Override
+    public void flush() {
+        Delta delta;
+        LiveMetricsVO metrics;
+        synchronized (this) {
+            if (unsent.isEmpty()) {
+                return;
+            }
+            delta = unsent;
+            unsent = new Delta();
+            metrics = snapshot();
+        }
+        push(delta, metrics);
+    }
+
+    /**
+     * 重新加载
+     */
+    @Override
+    public void reload() {
+        LocalDate today = LocalDate.now();
+        List<DailyBusinessStats> statsList = dailyStatsMapper.listByDateRange(today, today);
+        DailyBusinessStats stats = statsList.isEmpty() ? null : statsList.get(0);
+        OrderStatisticsVO orderStatisticsVO = workspaceCounterService.getOrderStatistics();
+
+        LiveMetricsVO metrics;
+        synchronized (this) {
+            date = today;
+            orderCount = stats != null ? nullToZero(stats.getOrderCount()) : 0;
+            validOrderCount = stats != null ? nullToZero(stats.getValidOrderCount()) : 0;
+            turnover = stats != null && stats.getTurnover() != null ? stats.getTurnover() : BigDecimal.ZERO;
+            newUsers = stats != null ? nullToZero(stats.getNewUserCount()) : 0;
+            toBeConfirmed = nullToZero(orderStatisticsVO.getToBeConfirmed());
+            confirmed = nullToZero(orderStatisticsVO.getConfirmed());
+            deliveryInProgress = nullToZero(orderStatisticsVO.getDeliveryInProgress());
+            unsent = new Delta();
+            metrics = snapshot();
+        }
+        //重新加载后推送完整数据，工作台以此为准
+        push(null, metrics);
+    }
+
+    /**
+     * 收到增量（包括本节点发布的），累加到内存中等待推送
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            apply(JSON.parseObject(new String(message.getBody(), StandardCharsets.UTF_8), Delta.class));
+        } catch (Exception e) {
+            log.warn("处理实时数据增量失败", e);
+        }
+    }
+
+    private synchronized void apply(Delta delta) {
+        rollDate();
+        //不是今天下单的订单只影响待处理数量
+        if (date.toString().equals(delta.getDate())) {
+            orderCount += delta.getOrderCount();
+            validOrderCount += delta.getValidOrderCount();
+            turnover = turnover.add(delta.getTurnover());
+            newUsers += delta.getNewUsers();
+        } else {
+            delta.clearDaily();
+        }
+        toBeConfirmed += delta.getToBeConfirmed();
+        confirmed += delta.getConfirmed();
+        deliveryInProgress += delta.getDeliveryInProgress();
+        unsent.merge(delta);
+    }
+
+    /**
+     * 跨天后当天数据从零开始，待处理数量保留
+     */
+    private void rollDate() {
+        LocalDate today = LocalDate.now();
+        if (!today.equals(date)) {
+            date = today;
+            orderCount = 0;
+            validOrderCount = 0;
+            turnover = BigDecimal.ZERO;
+            newUsers = 0;
+        }
+    }
+
+    private LiveMetricsVO snapshot() {
+        Double orderCompletionRate = 0.0;
+        if (orderCount > 0) {
+            // 保留2位小数
+            orderCompletionRate = Math.round((double) validOrderCount / orderCount * 100) / 100.0;
+        }
+        Double unitPrice = 0.0;
+        if (validOrderCount > 0) {
+            unitPrice = Math.round(turnover.doubleValue() / validOrderCount * 100) / 100.0;
+        }
+        return LiveMetricsVO.builder()
+                .date(date)
+                .turnover(turnover.doubleValue())
+                .orderCount(orderCount)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers(newUsers)
+                .toBeConfirmed(Math.max(toBeConfirmed, 0))
+                .confirmed(Math.max(confirmed, 0))
+                .deliveryInProgress(Math.max(deliveryInProgress, 0))
+                .build();
+    }
+
+    /**
+     * 推送给本节点的工作台，delta为空时表示全量数据
+     * @param delta
+     * @param metrics
+     */
+    private void push(Delta delta, LiveMetricsVO metrics) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", MESSAGE_TYPE);
+        if (delta != null) {
+            map.put("delta", delta);
+        }
+        map.put("metrics", metrics);
+        webSocketServer.sendToAllClient(JSON.toJSONString(map));
+    }
+
+    /**
+     * 事务提交后发布增量，Redis不可用时只累加到本节点
+     * @param delta
+     */
+    private void publishAfterCommit(Delta delta) {
+        Runnable action = () -> {
+            try {
+                stringRedisTemplate.convertAndSend(LIVE_METRICS_CHANNEL, JSON.toJSONString(delta));
+            } catch (Exception e) {
+                log.warn("发布实时数据增量失败，仅更新本节点", e);
+                apply(delta);
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private int nullToZero(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    /**
+     * 实时数据增量
+     */
+    @Data
+    public static class Delta {
+
+        //下单或注册的日期，当天的数据只累加到同一天
+        private String date;
+        private int orderCount;
+        private int validOrderCount;
+        private BigDecimal turnover = BigDecimal.ZERO;
+        private int newUsers;
+        private int toBeConfirmed;
+        private int confirmed;
+        private int deliveryInProgress;
+
+        void addPending(Integer status, int count) {
+            if (Orders.TO_BE_CONFIRMED.equals(status)) {
+                toBeConfirmed += count;
+            } else if (Orders.CONFIRMED.equals(status)) {
+                confirmed += count;
+            } else if (Orders.DELIVERY_IN_PROGRESS.equals(status)) {
+                deliveryInProgress += count;
+            }
+        }
+
+        void clearDaily() {
+            orderCount = 0;
+            validOrderCount = 0;
+            turnover = BigDecimal.ZERO;
+            newUsers = 0;
+        }
+
+        void merge(Delta other) {
+            date = other.date;
+            orderCount += other.orderCount;
+            validOrderCount += other.validOrderCount;
+            turnover = turnover.add(other.turnover);
+            newUsers += other.newUsers;
+            toBeConfirmed += other.toBeConfirmed;
+            confirmed += other.confirmed;
+            deliveryInProgress += other.deliveryInProgress;
+        }
+
+        boolean isEmpty() {
+            return orderCount == 0 && validOrderCount == 0 && turnover.signum() == 0 && newUsers == 0
+                    && toBeConfirmed == 0 && confirmed == 0 && deliveryInProgress == 0;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.sky.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.constant.CacheConstant;
+import com.sky.constant.StatusConstant;
+import com.sky.entity.Dish;
+import com.sky.properties.MenuCacheProperties;
+import com.sky.service.DishService;
+import com.sky.service.MenuCacheService;
+import com.sky.vo.DishVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * 用户端菜单二级缓存
+ * 一级缓存：进程内Caffeine，命中时不需要网络往返和反序列化
+ * 二级缓存：Redis中的dish_分类id
+ * 数据变更时通过Redis发布订阅通知所有节点清理本地缓存
+ */
+@Service
+@Slf4j
+public class MenuCacheServiceImpl implements MenuCacheService, MessageListener {
+
+    @Autowired
+    private DishService dishService;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private MenuCacheProperties menuCacheProperties;
+
+    private Cache<String, List<DishVO>> localCache;
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(menuCacheProperties.getLocalMaximumSize())
+                .expireAfterWrite(Duration.ofSeconds(menuCacheProperties.getLocalExpireSeconds()))
+                .build();
+        //订阅缓存失效频道
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CacheConstant.CACHE_INVALIDATE_CHANNEL));
+        backfillDishTag();
+    }
+
+    /**
+     * 缓存标签上线前写入的dish_缓存没有登记，也没有过期时间，整个集群只扫描一次补登记到标签中
+     */
+    private void backfillDishTag() {
+        try {
+            Boolean first = stringRedisTemplate.opsForValue().setIfAbsent(CacheConstant.DISH_KEY_TAG_BACKFILLED, "1");
+            if (!Boolean.TRUE.equals(first)) {
+                return;
+            }
+            List<String> keys = (List<String>) redisTemplate.execute((RedisCallback<List<String>>) connection -> {
+                List<String> found = new ArrayList<>();
+                ScanOptions options = ScanOptions.scanOptions().match(CacheConstant.DISH_KEY_PREFIX + "*").count(1000).build();
+                try (Cursor<byte[]> cursor = connection.scan(options)) {
+                    while (cursor.hasNext()) {
+                        found.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                    }
+                }
+                return found;
+            });
+            if (keys != null && !keys.isEmpty()) {
+                redisTemplate.opsForSet().add(CacheConstant.DISH_KEY_TAG, keys.toArray());
+            }
+            log.info("商品缓存标签补登记了{}个key", keys == null ? 0 : keys.size());
+        } catch (Exception e) {
+            log.error("商品缓存标签补登记失败，下次启动时重新扫描", e);
+            try {
+                stringRedisTemplate.delete(CacheConstant.DISH_KEY_TAG_BACKFILLED);
+            } catch (Exception ignored) {
+                //Redis不可用时标记可能没有写入
+            }
+        }
+    }
+
+    /**
+     * 根据分类id查询商品
+     * @param categoryId
+     * @return
+     */
+    @Override
+    public List<DishVO> getDishList(Long categoryId) {
+        String key = CacheConstant.DISH_KEY_PREFIX + categoryId;
+        //同一个key并发未命中时只有一个线程回源，其余线程等待结果
+        return localCache.get(key, k -> loadDishList(k, categoryId));
+    }
+
+    /**
+     * 本地缓存未命中时，先查Redis，再查数据库
+     * @param key
+     * @param categoryId
+     * @return
+     */
+    private List<DishVO> loadDishList(String key, Long categoryId) {
+        List<DishVO> list = (List<DishVO>) redisTemplate.opsForValue().get(key);
+        if (list == null || list.isEmpty()) {
+            Dish dish = Dish.builder()
+                    .categoryId(categoryId)
+                    .status(StatusConstant.ENABLE)
+                    .build();
+            list = dishService.dyList(dish);
+            redisTemplate.opsForValue().set(key, list);
+            //登记到缓存标签中，清理时无需扫描整个keyspace
+            redisTemplate.opsForSet().add(CacheConstant.DISH_KEY_TAG, key);
+        }
+        //本地缓存中的对象会被多个请求共享，不允许修改
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 清理指定分类的商品缓存
+     * @param categoryIds
+     */
+    @Override
+    public void evictDish(Collection<Long> categoryIds) {
+        if (categoryIds == null || categoryIds.isEmpty()) {
+            return;
+        }
+        List<String> keys = categoryIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .map(categoryId -> CacheConstant.DISH_KEY_PREFIX + categoryId)
+                .collect(Collectors.toList());
+        if (keys.isEmpty()) {
+            return;
+        }
+        redisTemplate.delete(keys);
+        redisTemplate.opsForSet().remove(CacheConstant.DISH_KEY_TAG, keys.toArray());
+        log.info("清理了商品缓存：{}", keys);
+
+        localCache.invalidateAll(keys);
+        publish(String.join(",", keys));
+    }
+
+    /**
+     * 清理全部商品缓存
+     * 通过缓存标签获取所有商品缓存key，避免使用阻塞的keys命令
+     * 先把标签原子地改名为临时key再读取，改名之后写入的缓存登记到新的标签中，不会随旧标签一起被删掉
+     */
+    @Override
+    public void evictAllDish() {
+        String evicting = CacheConstant.DISH_KEY_TAG + ":evicting:" + UUID.randomUUID();
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(CacheConstant.DISH_KEY_TAG))) {
+            try {
+                redisTemplate.rename(CacheConstant.DISH_KEY_TAG, evicting);
+            } catch (Exception e) {
+                //检查之后标签被其他节点改名，说明正在被清理
+                log.warn("商品缓存标签改名失败：{}", e.getMessage());
+            }
+        }
+        Set<String> keys = redisTemplate.opsForSet().members(evicting);
+        if (keys != null && !keys.isEmpty()) {
+            redisTemplate.delete(keys);
+            log.info("清理了{}个dish_相关的缓存", keys.size());
+        }
+        redisTemplate.delete(evicting);
+        localCache.invalidateAll();
+        publish(CacheConstant.INVALIDATE_ALL);
+    }
+
+    /**
+     * 广播缓存失效消息，广播失败时其他节点依靠本地缓存过期时间兜底
+     * @param message
+     */
+    private void publish(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(CacheConstant.CACHE_INVALIDATE_CHANNEL, message);
+        } catch (Exception e) {
+            log.error("广播缓存失效消息失败：{}", message, e);
+        }
+    }
+
+    /**
+     * 接收其他节点（包括本节点）发出的缓存失效消息
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.info("收到缓存失效消息：{}", body);
+        if (CacheConstant.INVALIDATE_ALL.equals(body)) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidateAll(Arrays.asList(body.split(",")));
+        }
+    }
+}
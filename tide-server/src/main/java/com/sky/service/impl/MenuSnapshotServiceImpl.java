@@ -0,0 +1,226 @@
+package com.sky.service.impl;
+
+import com.sky.constant.CacheConstant;
+import com.sky.constant.StatusConstant;
+import com.sky.entity.Category;
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.json.JacksonObjectMapper;
+import com.sky.result.Result;
+import com.sky.service.CategoryService;
+import com.sky.service.DishService;
+import com.sky.service.MenuSnapshotService;
+import com.sky.service.SetmealService;
+import com.sky.vo.DishVO;
+import com.sky.vo.MenuSnapshotVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * 菜单快照
+ * 分类、商品、口味、套餐预先序列化为字节数组，请求时直接输出，不再重复查询和序列化
+ * ETag由快照内容计算，内容相同的快照在所有节点上的ETag一致
+ */
+@Service
+@Slf4j
+public class MenuSnapshotServiceImpl implements MenuSnapshotService, MessageListener {
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private DishService dishService;
+
+    @Autowired
+    private SetmealService setmealService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    private final JacksonObjectMapper objectMapper = new JacksonObjectMapper();
+
+    //当前快照，重建时整体替换
+    private volatile Snapshot snapshot;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CacheConstant.MENU_SNAPSHOT_CHANNEL));
+    }
+
+    /**
+     * 输出菜单快照
+     * @param ifNoneMatch
+     * @param response
+     */
+    @Override
+    public void writeSnapshot(String ifNoneMatch, HttpServletResponse response) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = rebuild(currentVersion());
+        }
+
+        response.setHeader(HttpHeaders.ETAG, current.etag);
+        //允许客户端缓存，但每次使用前都需要携带ETag校验
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+
+        if (matches(ifNoneMatch, current.etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentLength(current.body.length);
+        try {
+            response.getOutputStream().write(current.body);
+        } catch (IOException e) {
+            log.error("输出菜单快照失败", e);
+        }
+    }
+
+    /**
+     * 菜单数据发生变化
+     */
+    @Override
+    public void refresh() {
+        try {
+            Long version = stringRedisTemplate.opsForValue().increment(CacheConstant.MENU_SNAPSHOT_VERSION_KEY);
+            stringRedisTemplate.convertAndSend(CacheConstant.MENU_SNAPSHOT_CHANNEL, String.valueOf(version));
+        } catch (Exception e) {
+            //Redis不可用时至少保证本节点下次请求时重建快照
+            log.error("广播菜单快照重建消息失败", e);
+            snapshot = null;
+        }
+    }
+
+    /**
+     * 收到重建消息后，在本节点重建快照
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        long version = Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8));
+        Snapshot current = snapshot;
+        //连续多次修改时，较旧的消息不需要再重建
+        if (current != null && current.version >= version) {
+            return;
+        }
+        rebuild(version);
+    }
+
+    /**
+     * 从数据库重建快照
+     * 同一时间只允许一个线程重建，避免并发请求重复查询
+     * @param version
+     * @return
+     */
+    private synchronized Snapshot rebuild(long version) {
+        Snapshot current = snapshot;
+        if (current != null && current.version >= version) {
+            return current;
+        }
+
+        List<Category> categories = categoryService.list(null);
+
+        //一次查询所有起售中的商品（口味批量加载），再按分类分组
+        List<DishVO> dishVOList = dishService.dyList(Dish.builder().status(StatusConstant.ENABLE).build());
+        Map<Long, List<DishVO>> dishes = dishVOList.stream()
+                .collect(Collectors.groupingBy(DishVO::getCategoryId, TreeMap::new, Collectors.toList()));
+
+        List<Setmeal> setmealList = setmealService.list(Setmeal.builder().status(StatusConstant.ENABLE).build());
+        Map<Long, List<Setmeal>> setmeals = setmealList.stream()
+                .collect(Collectors.groupingBy(Setmeal::getCategoryId, TreeMap::new, Collectors.toList()));
+
+        MenuSnapshotVO menuSnapshotVO = MenuSnapshotVO.builder()
+                .version(version)
+                .categories(categories)
+                .dishes(dishes)
+                .setmeals(setmeals)
+                .build();
+
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(Result.success(menuSnapshotVO));
+            String etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+            current = new Snapshot(version, body, etag);
+        } catch (IOException e) {
+            throw new IllegalStateException("菜单快照序列化失败", e);
+        }
+
+        snapshot = current;
+        log.info("菜单快照重建完成，版本：{}，大小：{}字节", version, current.body.length);
+        return current;
+    }
+
+    /**
+     * 查询当前快照版本号
+     * @return
+     */
+    private long currentVersion() {
+        try {
+            String version = stringRedisTemplate.opsForValue().get(CacheConstant.MENU_SNAPSHOT_VERSION_KEY);
+            return version == null ? 0L : Long.parseLong(version);
+        } catch (Exception e) {
+            log.error("查询菜单快照版本号失败", e);
+            return 0L;
+        }
+    }
+
+    /**
+     * 判断If-None-Match是否与当前ETag匹配
+     * @param ifNoneMatch
+     * @param etag
+     * @return
+     */
+    private boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if ("*".equals(candidate) || etag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 已序列化的快照
+     */
+    private static class Snapshot {
+        private final long version;
+        private final byte[] body;
+        private final String etag;
+
+        Snapshot(long version, byte[] body, String etag) {
+            this.version = version;
+            this.body = body;
+            this.etag = etag;
+        }
+    }
+}
@@ -12,25 +12,31 @@ import com.sky.entity.*;
 import com.sky.exception.AddressBookBusinessException;
 import com.sky.exception.OrderBusinessException;
 import com.sky.mapper.*;
+import com.sky.result.CursorPageResult;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
+import com.sky.service.DailyStatsService;
+import com.sky.service.LiveMetricsService;
 import com.sky.service.OrderService;
+import com.sky.service.OrderTimeoutService;
 import com.sky.service.PaymentService;
+import com.sky.service.ShoppingCartService;
+import com.sky.service.WorkspaceCounterService;
+import com.sky.utils.SnowflakeIdGenerator;
 import com.sky.vo.OrderPaymentVO;
 import com.sky.vo.OrderStatisticsVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
-import com.sky.websocket.WebSocketServer;
+import com.sky.websocket.WebSocketBroadcastBus;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -38,7 +44,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -54,7 +60,7 @@ public class OrderServiceImpl implements OrderService {
     private AddressBookMapper addressBookMapper;
 
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartService shoppingCartService;
 
     @Autowired
     private UserMapper userMapper;
@@ -72,12 +78,25 @@ public class OrderServiceImpl implements OrderService {
     private PaymentService paymentService;
 
     @Autowired
-    private WebSocketServer webSocketServer;
+    private WebSocketBroadcastBus webSocketBroadcastBus;
+
+    @Autowired
+    private SnowflakeIdGenerator orderNumberGenerator;
+
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    @Autowired
+    private WorkspaceCounterService workspaceCounterService;
+
+    @Autowired
+    private LiveMetricsService liveMetricsService;
+
+    @Autowired
+    private OrderTimeoutService orderTimeoutService;
 
     // 使用内存缓存记录处理中的订单，防止重复处理
     private final Map<String, Boolean> processingOrders = new ConcurrentHashMap<>();
-    @Autowired
-    private RedissonClient redissonClient;
 
     /**
      * 乐观锁添加
@@ -96,135 +115,93 @@ public class OrderServiceImpl implements OrderService {
     @Transactional
     @Override
     public OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO) {
-        // 获取用户ID，用于创建锁的唯一标识
+        // 获取用户ID
+        // 重复提交由IdempotentAspect在进入事务之前拦截，这里不再加锁等待
         Long userId = BaseContext.getCurrentId();
 
-        // 创建分布式锁，使用用户ID作为锁的一部分，确保同一用户的订单操作是串行的
-        String lockKey = "order:submit:" + userId;
-        RLock lock = redissonClient.getLock(lockKey);
-
-        try {
-            // 尝试获取锁，最多等待2秒，锁定时间为30秒(自动释放)
-            boolean isLocked = lock.tryLock(2, 30, TimeUnit.SECONDS);
-
-            //isLocked变量代表的是"当前线程是否成功获取到了锁"，而不是"锁是否已经被上锁"
-            if (!isLocked) {
-                log.error("获取分布式锁失败，可能存在并发下单：userId={}", userId);
-                throw new OrderBusinessException(MessageConstant.ORDER_FAILD);
-            }
-
-            log.info("获取分布式锁成功：{}", lockKey);
+        // 处理各种业务异常（地址簿为空/购物车数据为空）
+        AddressBook addressBook = addressBookMapper.getById(ordersSubmitDTO.getAddressBookId());
+        if (addressBook == null){
+            throw new AddressBookBusinessException(MessageConstant.ADDRESS_BOOK_IS_NULL);
+        }
 
-            // 处理各种业务异常（地址簿为空/购物车数据为空）
-            AddressBook addressBook = addressBookMapper.getById(ordersSubmitDTO.getAddressBookId());
-            if (addressBook == null){
-                throw new AddressBookBusinessException(MessageConstant.ADDRESS_BOOK_IS_NULL);
-            }
+        List<ShoppingCart> shoppingCartList = shoppingCartService.getCart(userId);
+        if(shoppingCartList == null || shoppingCartList.size() == 0){
+            throw new AddressBookBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
+        }
 
-            ShoppingCart shoppingCart = ShoppingCart.builder()
-                    .userId(userId)
-                    .build();
-            List<ShoppingCart> shoppingCartList = shoppingCartMapper.list(shoppingCart);
-            if(shoppingCartList == null || shoppingCartList.size() == 0){
-                throw new AddressBookBusinessException(MessageConstant.SHOPPING_CART_IS_NULL);
-            }
+        // 获取当前用户
+        User user = userMapper.getById(userId);
 
-            // 获取当前用户
-            User user = userMapper.getById(userId);
+        // 拼写当前的地址
+        StringBuilder fullAddress = new StringBuilder();
 
-            // 拼写当前的地址
-            StringBuilder fullAddress = new StringBuilder();
+        // 添加省份名称
+        if (addressBook.getProvinceName() != null) {
+            fullAddress.append(addressBook.getProvinceName());
+        }
 
-            // 添加省份名称
-            if (addressBook.getProvinceName() != null) {
-                fullAddress.append(addressBook.getProvinceName());
-            }
+        // 添加城市名称
+        if (addressBook.getCityName() != null) {
+            fullAddress.append(addressBook.getCityName());
+        }
 
-            // 添加城市名称
-            if (addressBook.getCityName() != null) {
-                fullAddress.append(addressBook.getCityName());
-            }
+        // 添加区/县名称
+        if (addressBook.getDistrictName() != null) {
+            fullAddress.append(addressBook.getDistrictName());
+        }
 
-            // 添加区/县名称
-            if (addressBook.getDistrictName() != null) {
-                fullAddress.append(addressBook.getDistrictName());
-            }
+        // 添加详细地址
+        if (addressBook.getDetail() != null) {
+            fullAddress.append(addressBook.getDetail());
+        }
 
-            // 添加详细地址
-            if (addressBook.getDetail() != null) {
-                fullAddress.append(addressBook.getDetail());
-            }
+        // 向订单表插入1条数据
+        Orders orders = new Orders();
+        BeanUtils.copyProperties(ordersSubmitDTO,orders);
+        orders.setOrderTime(LocalDateTime.now());
+        orders.setPayStatus(Orders.UN_PAID);
+        orders.setStatus(Orders.PENDING_PAYMENT);
+        orders.setNumber(orderNumberGenerator.nextIdStr());
+        orders.setPhone(addressBook.getPhone());
+        orders.setConsignee(addressBook.getConsignee());
+        orders.setUserName(user.getName());
+        orders.setAddress(fullAddress.toString());
+        orders.setUserId(userId);
+
+        orderMapper.insert(orders);
+
+        // 向订单明细表插入n条数据
+        List<OrderDetail> orderDetailList = new ArrayList<>();
+        for(ShoppingCart cart : shoppingCartList){
+            OrderDetail orderDetail = new OrderDetail();
+            BeanUtils.copyProperties(cart,orderDetail);
+            orderDetail.setOrderId(orders.getId());//设置当前订单明细关联的订单id
+            orderDetailList.add(orderDetail);
+        }
 
-            // 向订单表插入1条数据
-            Orders orders = new Orders();
-            BeanUtils.copyProperties(ordersSubmitDTO,orders);
-            orders.setOrderTime(LocalDateTime.now());
-            orders.setPayStatus(Orders.UN_PAID);
-            orders.setStatus(Orders.PENDING_PAYMENT);
-            orders.setNumber(String.valueOf(System.currentTimeMillis()));
-            orders.setPhone(addressBook.getPhone());
-            orders.setConsignee(addressBook.getConsignee());
-            orders.setUserName(user.getName());
-            orders.setAddress(fullAddress.toString());
-            orders.setUserId(userId);
-
-            orderMapper.insert(orders);
-
-            // 向订单明细表插入n条数据
-            List<OrderDetail> orderDetailList = new ArrayList<>();
-            for(ShoppingCart cart : shoppingCartList){
-                OrderDetail orderDetail = new OrderDetail();
-                BeanUtils.copyProperties(cart,orderDetail);
-                orderDetail.setOrderId(orders.getId());//设置当前订单明细关联的订单id
-                orderDetailList.add(orderDetail);
-            }
+        orderDetailMapper.insertBatch(orderDetailList);
 
-            orderDetailMapper.insertBatch(orderDetailList);
+        // 累加当天的订单总数，事务提交后才写入汇总表
+        dailyStatsService.orderSubmitted(orders);
+        orderStatusChanged(orders, null, orders.getStatus());
 
-            // 下单成功后清空购物车数据
-            shoppingCartMapper.deleteShoppingCart(shoppingCart);
+        // 加入超时队列，到期未支付自动取消
+        orderTimeoutService.schedule(orders);
 
-            // 封装VO返回结果
-            OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
-                    .id(orders.getId())
-                    .orderNumber(orders.getNumber())
-                    .orderAmount(orders.getAmount())
-                    .orderTime(orders.getOrderTime())
-                    .build();
+        // 下单成功后清空购物车数据，购物车在Redis中，需要等事务提交后再清空，避免下单失败时购物车丢失
+        cleanCartAfterCommit(userId);
 
-            return orderSubmitVO;
+        // 封装VO返回结果
+        OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
+                .id(orders.getId())
+                .orderNumber(orders.getNumber())
+                .orderAmount(orders.getAmount())
+                .orderTime(orders.getOrderTime())
+                .build();
 
-        } catch (InterruptedException e) {
-            log.error("获取锁被中断", e);
-            Thread.currentThread().interrupt();
-            throw new OrderBusinessException(MessageConstant.ORDER_FAILD);
-        } catch (OrderBusinessException | AddressBookBusinessException e) {
-            // 直接抛出业务异常
-            throw e;
-        } catch (Exception e) {
-            log.error("下单过程中发生异常", e);
-            throw new OrderBusinessException(MessageConstant.ORDER_FAILD);
-        } finally {
-            // 释放锁，确保即使发生异常也能释放锁
-            if (lock.isHeldByCurrentThread()) {
-                lock.unlock();
-                log.info("释放分布式锁：{}", lockKey);
-            }
-        }
+        return orderSubmitVO;
     }
-    /**
-     * 这里添加分布式锁的逻辑如下
-     * 1.创建锁
-     * 用用户id创关键一个唯一锁表示，用redission客户端获得锁对象
-     * 2.获取锁
-     * 最多等待2秒，锁的自动释放时间为30秒
-     * 3.业务处理
-     * 在finally块中检查当前线程是否持有锁
-     * 如果持有锁，则释放锁：lock.unlock()
-     * 确保无论业务成功还是异常，锁都能被释放
-     */
-
-
 
     /**
      * 订单支付
@@ -345,15 +322,17 @@ public class OrderServiceImpl implements OrderService {
                 .build();
 
         orderMapper.update(orders);
+        orderStatusChanged(ordersDB, ordersDB.getStatus(), orders.getStatus());
+        orderTimeoutService.remove(ordersDB.getId());
 
-        //通过websocket向客户端浏览器推送消息 type orderId content
+        //通过websocket向所有节点上的客户端浏览器推送消息 type orderId content
         Map map = new HashMap();
         map.put("type",1); //1是来单提醒，2是催单
         map.put("orderId",ordersDB.getId());
         map.put("content","订单号:"+outTradeNo);
 
         String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);
+        webSocketBroadcastBus.broadcast(json);
     }
 
     /**
@@ -363,36 +342,21 @@ public class OrderServiceImpl implements OrderService {
      */
     @Override
     public PageResult pageQuery(OrdersPageQueryDTO ordersPageQueryDTO) {
-        PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize());
         //这里获得的orderpagequerydto实际上只有三个属性，一个page，一个pageSize，一个status
         ordersPageQueryDTO.setUserId(BaseContext.getCurrentId());
+        if (ordersPageQueryDTO.getCursor() != null) {
+            return seekQuery(ordersPageQueryDTO);
+        }
+        PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize(),
+                !Boolean.FALSE.equals(ordersPageQueryDTO.getCount()));
         //进行分页查询
         Page<Orders> page = orderMapper.pageQuery(ordersPageQueryDTO);
         //接口文档中需要显示orderDetailList，但是这个字段在数据库中不存在，所以需要手动设置
         //获取分页查询的结果
         List<Orders> orderList = page.getResult();
         //因为在接口要求中，提到了orderDetailList，所以需要手动设置这个字段
-        List<OrderVO> orderVOList = new ArrayList<>();
-        if(orderList != null && orderList.size() > 0){
-            //分页查询查询到了结果
-            for (Orders orders : orderList){
-                //遍历查询到的订单
-                //为每一个订单建立一个orderVO
-                //这里需要把order类扩展为orderVO类，从而实现订单详情的展示
-                OrderVO orderVO = new OrderVO();
-                BeanUtils.copyProperties(orders,orderVO);
-                //现在需要基于ordervo来查询订单详情
-                List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
-                //将查询到的详细订单信息输入到orderVO中
-                //这里的vo其实是做了一种取巧的方法，之前都是把所有相关属性都写一遍
-                //而这里用到的vo实际上是将order类中的信息全归为了orderDishes订单商品信息
-                //将orderDetailList中的所有商品信息都整合到List<OrderDetail>中
-                orderVO.setOrderDetailList(orderDetailList);
-                //这里建立好了一个orderVO，所以可以进行添加到orderVOList中
-                orderVOList.add(orderVO);
-            }
-
-        }
+        //整页订单的明细通过一次in查询获得，而不是每个订单查询一次
+        List<OrderVO> orderVOList = convertToOrderVOList(orderList);
         return new PageResult(page.getTotal(), orderVOList);
     }
 
@@ -425,7 +389,7 @@ public class OrderServiceImpl implements OrderService {
         }
 
         // 可选：先清空购物车
-        shoppingCartMapper.deleteShoppingCart(ShoppingCart.builder().userId(userId).build());
+        shoppingCartService.cleanCart(userId);
 
         // 将订单详情转换为购物车对象
         List<ShoppingCart> validCarts = new ArrayList<>();
@@ -470,14 +434,40 @@ public class OrderServiceImpl implements OrderService {
             }
         }
 
-        // 批量添加到购物车（如果有批量插入方法）
+        // 批量添加到购物车
         if (!validCarts.isEmpty()) {
-            for (ShoppingCart cart : validCarts) {
-                shoppingCartMapper.insert(cart);
-            }
+            shoppingCartService.addItems(userId, validCarts);
         }
     }
 
+    /**
+     * 事务提交后清空购物车，没有事务时立即清空
+     * @param userId
+     */
+    private void cleanCartAfterCommit(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    shoppingCartService.cleanCart(userId);
+                }
+            });
+        } else {
+            shoppingCartService.cleanCart(userId);
+        }
+    }
+
+    /**
+     * 订单状态变化后更新工作台计数和实时数据
+     * @param orders 变化前查询到的订单，需要包含下单时间和金额
+     * @param oldStatus
+     * @param newStatus
+     */
+    private void orderStatusChanged(Orders orders, Integer oldStatus, Integer newStatus) {
+        workspaceCounterService.orderChanged(oldStatus, newStatus);
+        liveMetricsService.orderStatusChanged(orders, oldStatus, newStatus);
+    }
+
     /**
      * 取消订单
      * @param id
@@ -535,22 +525,52 @@ public class OrderServiceImpl implements OrderService {
     @Transactional
     @Override
     public PageResult conditionSearch(OrdersPageQueryDTO ordersPageQueryDTO) {
-        PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize());
+        if (ordersPageQueryDTO.getCursor() != null) {
+            return seekQuery(ordersPageQueryDTO);
+        }
+        PageHelper.startPage(ordersPageQueryDTO.getPage(), ordersPageQueryDTO.getPageSize(),
+                !Boolean.FALSE.equals(ordersPageQueryDTO.getCount()));
         Page<Orders> page = orderMapper.pageQuery(ordersPageQueryDTO);
         //如果用orders做返回信息的话，会缺少orderDishes字段，该字段的要求是这样的
         //订单包含的商品，以字符串形式展示
-        List<OrderVO> orderVOList = new ArrayList<>();
-        //获取订单列表
-        List<Orders> ordersList = page.getResult();
+        //获取订单列表，并批量填充订单明细
+        List<OrderVO> orderVOList = convertToOrderVOList(page.getResult());
 
-        if(ordersList != null && !ordersList.isEmpty()) {
-            for (Orders orders : ordersList) {
-                OrderVO orderVO = convertToOrderVO(orders);
-                orderVOList.add(orderVO);
+        return new PageResult(page.getTotal(), orderVOList);
+    }
+
+    /**
+     * 游标分页查询
+     * 以上一页最后一个订单的(下单时间, id)为起点向后查询，翻页深度不影响查询速度，
+     * 多查一条用来判断是否还有下一页，只有请求中指定count=true时才统计总数
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    private PageResult seekQuery(OrdersPageQueryDTO ordersPageQueryDTO) {
+        LocalDateTime lastOrderTime = null;
+        Long lastId = null;
+        String cursor = ordersPageQueryDTO.getCursor().trim();
+        if (!cursor.isEmpty()) {
+            int index = cursor.lastIndexOf(',');
+            try {
+                lastOrderTime = LocalDateTime.parse(cursor.substring(0, index));
+                lastId = Long.parseLong(cursor.substring(index + 1));
+            } catch (RuntimeException e) {
+                throw new OrderBusinessException(MessageConstant.ORDER_CURSOR_INVALID);
             }
         }
 
-        return new PageResult(page.getTotal(), orderVOList);
+        int pageSize = ordersPageQueryDTO.getPageSize() > 0 ? ordersPageQueryDTO.getPageSize() : 10;
+        List<Orders> orderList = orderMapper.seekQuery(ordersPageQueryDTO, lastOrderTime, lastId, pageSize + 1);
+        String nextCursor = null;
+        if (orderList.size() > pageSize) {
+            orderList = orderList.subList(0, pageSize);
+            Orders last = orderList.get(pageSize - 1);
+            nextCursor = last.getOrderTime() + "," + last.getId();
+        }
+
+        long total = Boolean.TRUE.equals(ordersPageQueryDTO.getCount()) ? orderMapper.countPageQuery(ordersPageQueryDTO) : -1;
+        return new CursorPageResult(total, convertToOrderVOList(orderList), nextCursor);
     }
 
     /**
@@ -599,6 +619,42 @@ public class OrderServiceImpl implements OrderService {
 
         // 查询订单详细信息
         List<OrderDetail> orderDetailList = orderDetailMapper.getByOrderId(orders.getId());
+        fillOrderDetails(orderVO, orderDetailList);
+
+        return orderVO;
+    }
+
+    /**
+     * 将一页Orders对象批量转换为OrderVO对象
+     * 所有订单的明细通过一次in查询获得，再按订单id分组填充
+     * @param ordersList 订单列表
+     * @return 填充好的OrderVO列表
+     */
+    private List<OrderVO> convertToOrderVOList(List<Orders> ordersList) {
+        List<OrderVO> orderVOList = new ArrayList<>();
+        if (ordersList == null || ordersList.isEmpty()) {
+            return orderVOList;
+        }
+
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        Map<Long, List<OrderDetail>> detailMap = orderDetailMapper.getByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderDetail::getOrderId));
+
+        for (Orders orders : ordersList) {
+            OrderVO orderVO = new OrderVO();
+            BeanUtils.copyProperties(orders, orderVO);
+            fillOrderDetails(orderVO, detailMap.getOrDefault(orders.getId(), new ArrayList<>()));
+            orderVOList.add(orderVO);
+        }
+        return orderVOList;
+    }
+
+    /**
+     * 填充订单明细和orderDishes字段
+     * @param orderVO
+     * @param orderDetailList
+     */
+    private void fillOrderDetails(OrderVO orderVO, List<OrderDetail> orderDetailList) {
         orderVO.setOrderDetailList(orderDetailList);
 
         // 构建orderDishes字段
@@ -613,8 +669,6 @@ public class OrderServiceImpl implements OrderService {
             }
             orderVO.setOrderDishes(sb.toString());
         }
-
-        return orderVO;
     }
 
     /**
@@ -629,12 +683,18 @@ public class OrderServiceImpl implements OrderService {
             throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
         }
 
+        Orders ordersDB = orderMapper.getById(orderId);
+        if (ordersDB == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+
         //这里不找所有字段，而是只设置需要更新的字段，以免出现问题
         Orders orders = Orders.builder()
                     .id(orderId)
                     .status(Orders.CONFIRMED)
                     .build();
         orderMapper.update(orders);
+        orderStatusChanged(ordersDB, ordersDB.getStatus(), orders.getStatus());
     }
 
 
@@ -650,6 +710,10 @@ public class OrderServiceImpl implements OrderService {
         if (orderId == null) {
             throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
         }
+        Orders ordersDB = orderMapper.getById(orderId);
+        if (ordersDB == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
         //这里不找所有字段，而是只设置需要更新的字段，以免出现问题
         Orders orders = Orders.builder()
                 .id(orderId)
@@ -657,6 +721,7 @@ public class OrderServiceImpl implements OrderService {
                 .rejectionReason(ordersRejectionDTO.getRejectionReason())
                 .build();
         orderMapper.update(orders);
+        orderStatusChanged(ordersDB, ordersDB.getStatus(), orders.getStatus());
     }
 
     /**
@@ -685,6 +750,7 @@ public class OrderServiceImpl implements OrderService {
                 .cancelTime(LocalDateTime.now())
                 .build();
         orderMapper.update(orders1);
+        orderStatusChanged(orders, orders.getStatus(), orders1.getStatus());
     }
 
     /**
@@ -707,6 +773,7 @@ public class OrderServiceImpl implements OrderService {
                 .deliveryStatus(1)
                 .build();
         orderMapper.update(orders1);
+        orderStatusChanged(orders, orders.getStatus(), orders1.getStatus());
     }
 
     /**
@@ -728,6 +795,8 @@ public class OrderServiceImpl implements OrderService {
                 .deliveryTime(LocalDateTime.now())
                 .build();
         orderMapper.update(orders1);
+        dailyStatsService.orderCompleted(orders);
+        orderStatusChanged(orders, orders.getStatus(), orders1.getStatus());
     }
 
     /**
@@ -747,7 +816,7 @@ public class OrderServiceImpl implements OrderService {
         map.put("content", "订单号：" + orders.getNumber());
 
         String json = JSON.toJSONString(map);
-        webSocketServer.sendToAllClient(json);
+        webSocketBroadcastBus.broadcast(json);
     }
 
 
@@ -0,0 +1,154 @@
+package com.sky.service.impl;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderTimeoutProperties;
+import com.sky.service.LiveMetricsService;
+import com.sky.service.OrderTimeoutService;
+import com.sky.service.WorkspaceCounterService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Set;
+
+/**
+ * 订单超时取消
+ * 待支付订单保存在Redis的ZSET中，score为到期时间，轮询时只取出已经到期的订单，
+ * 每个订单在到期时被取消，不需要定时扫描整个订单表。
+ * 多个节点同时轮询时，通过ZREM的返回值决定由哪个节点处理；
+ * 更新时要求订单仍是待付款状态，已经支付的订单不会被取消
+ */
+@Service
+@Slf4j
+public class OrderTimeoutServiceImpl implements OrderTimeoutService {
+
+    //超时订单延时队列，member为订单id，score为到期时间戳
+    public static final String ORDER_TIMEOUT_QUEUE_KEY = "order:timeout:queue";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Autowired
+    private OrderTimeoutProperties orderTimeoutProperties;
+
+    @Autowired
+    private WorkspaceCounterService workspaceCounterService;
+
+    @Autowired
+    private LiveMetricsService liveMetricsService;
+
+    /**
+     * 加入延时队列，事务提交后才写入，下单失败的订单不会进入队列
+     * @param orders
+     */
+    @Override
+    public void schedule(Orders orders) {
+        LocalDateTime deadline = orders.getOrderTime().plusMinutes(orderTimeoutProperties.getPaymentTimeoutMinutes());
+        long score = deadline.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        String member = orders.getId().toString();
+        afterCommit(() -> stringRedisTemplate.opsForZSet().add(ORDER_TIMEOUT_QUEUE_KEY, member, score));
+    }
+
+    /**
+     * 从延时队列中移除
+     * @param orderId
+     */
+    @Override
+    public void remove(Long orderId) {
+        afterCommit(() -> stringRedisTemplate.opsForZSet().remove(ORDER_TIMEOUT_QUEUE_KEY, orderId.toString()));
+    }
+
+    /**
+     * 取出到期的订单并取消
+     * @return
+     */
+    @Override
+    public int processExpired() {
+        int batchSize = Math.max(orderTimeoutProperties.getBatchSize(), 1);
+        long now = System.currentTimeMillis();
+        Set<String> members = stringRedisTemplate.opsForZSet()
+                .rangeByScore(ORDER_TIMEOUT_QUEUE_KEY, 0, now, 0, batchSize);
+        if (members == null || members.isEmpty()) {
+            return 0;
+        }
+
+        int cancelled = 0;
+        for (String member : members) {
+            //删除成功的节点才处理，避免多个节点重复取消
+            Long removed = stringRedisTemplate.opsForZSet().remove(ORDER_TIMEOUT_QUEUE_KEY, member);
+            if (removed == null || removed == 0) {
+                continue;
+            }
+            try {
+                if (cancelTimeoutOrder(Long.valueOf(member))) {
+                    cancelled++;
+                }
+            } catch (Exception e) {
+                //取消失败，稍后重试
+                log.error("取消超时订单失败：{}", member, e);
+                long retryAt = System.currentTimeMillis() + orderTimeoutProperties.getRetryDelaySeconds() * 1000;
+                stringRedisTemplate.opsForZSet().add(ORDER_TIMEOUT_QUEUE_KEY, member, retryAt);
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * 取消超时订单
+     * @param orderId
+     * @return
+     */
+    @Override
+    public boolean cancelTimeoutOrder(Long orderId) {
+        Orders orders = Orders.builder()
+                .id(orderId)
+                .status(Orders.CANCELLED)
+                .cancelReason("订单超时，自动取消")
+                .cancelTime(LocalDateTime.now())
+                .build();
+        if (orderMapper.updateByIdAndStatus(orders, Orders.PENDING_PAYMENT) == 0) {
+            //订单已支付或者已经被取消
+            return false;
+        }
+
+        Orders ordersDB = orderMapper.getById(orderId);
+        workspaceCounterService.orderChanged(Orders.PENDING_PAYMENT, Orders.CANCELLED);
+        liveMetricsService.orderStatusChanged(ordersDB, Orders.PENDING_PAYMENT, Orders.CANCELLED);
+        return true;
+    }
+
+    /**
+     * 事务提交后执行，没有事务时立即执行
+     * @param action
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runQuietly(action);
+                }
+            });
+        } else {
+            runQuietly(action);
+        }
+    }
+
+    private void runQuietly(Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            //写入失败的订单由定时扫描兜底取消
+            log.error("更新订单超时队列失败", e);
+        }
+    }
+}
@@ -1,19 +1,28 @@
 package com.sky.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.properties.RateLimitProperties;
 import com.sky.service.RateLimiterService;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.functors.TruePredicate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * redis限流服务
+ * Redis调用失败时改用本节点的令牌桶限流，而不是直接放行
  */
 @Slf4j
 @Service
@@ -23,22 +32,38 @@ public class RateLimiterServiceImpl implements RateLimiterService {
     private StringRedisTemplate redisTemplate;
 
 
-    /**
-     * 简单的固定窗口限流Lua脚本
-     */
-    private final String simpleRateLimiterScript =
-            "local key = KEYS[1] " +
-                    "local window = tonumber(ARGV[1]) " +
-                    "local limit = tonumber(ARGV[2]) " +
-
-                    "local current = tonumber(redis.call('get', key) or '0') " +
-                    "if current + 1 > limit then " +
-                    "    return 0 " +
-                    "else " +
-                    "    redis.call('incrby', key, 1) " +
-                    "    redis.call('expire', key, window) " +
-                    "    return 1 " +
-                    "end";
+    //固定窗口限流脚本，见lua/fixed_window.lua
+    @Autowired
+    private RedisScript<Long> fixedWindowScript;
+
+    //令牌桶限流脚本，见lua/token_bucket.lua
+    @Autowired
+    private RedisScript<Long> tokenBucketScript;
+
+    //滑动窗口计数限流脚本，见lua/sliding_window.lua
+    @Autowired
+    private RedisScript<Long> slidingWindowScript;
+
+    //GCRA限流脚本，见lua/gcra.lua
+    @Autowired
+    private RedisScript<Long> gcraScript;
+
+    //令牌桶批量租借脚本，见lua/token_bucket_lease.lua
+    @Autowired
+    private RedisScript<Long> tokenBucketLeaseScript;
+
+    @Autowired
+    private RateLimitProperties rateLimitProperties;
+
+    //每个限流key在本节点租借到的令牌
+    private Cache<String, TokenLease> leases;
+
+    //Redis不可用时使用的本地令牌桶
+    private Cache<String, LocalTokenBucket> localBuckets;
+
+    //Redis调用失败后，在这个时间之前直接使用本地限流
+    private volatile long redisRetryAt;
+
     /**
      * 假设设置每60秒限制5次请求：
      *
@@ -47,34 +72,6 @@ public class RateLimiterServiceImpl implements RateLimiterService {
      * 60秒后，计数器过期，重新开始计数
      */
 
-    /**
-     * 令牌桶算法实现的Lua脚本
-     */
-    private final String tokenBucketScript =
-            "local key = KEYS[1] " +
-                    "local capacity = tonumber(ARGV[1]) " +
-                    "local timestamp = tonumber(ARGV[2]) " +
-                    "local rate = tonumber(ARGV[3]) " +
-                    "local requested = tonumber(ARGV[4]) " +
-
-                    "local last_tokens = tonumber(redis.call('hget', key, 'tokens') or capacity) " +
-                    "local last_refreshed = tonumber(redis.call('hget', key, 'last_refreshed') or '0') " +
-
-                    "local elapsed = math.max(0, timestamp - last_refreshed) " +
-                    "local new_tokens = math.min(capacity, last_tokens + (elapsed/1000.0) * rate) " +
-
-                    "local allowed = 0 " +
-                    "if new_tokens >= requested then " +
-                    "    new_tokens = new_tokens - requested " +
-                    "    allowed = 1 " +
-                    "end " +
-
-                    "redis.call('hset', key, 'tokens', new_tokens) " +
-                    "redis.call('hset', key, 'last_refreshed', timestamp) " +
-                    "redis.call('expire', key, 3600) " +
-
-                    "return allowed";
-
     /**
      * 假设设置容量为10，速率为2个/秒：
      * 初始状态：桶中有10个令牌
@@ -84,18 +81,43 @@ public class RateLimiterServiceImpl implements RateLimiterService {
      * 长期平均速率保持在2个/秒
      */
 
+    /**
+     * 启动时预先加载脚本，之后的请求直接通过EVALSHA执行
+     * 加载失败不影响启动，第一次执行时会通过EVAL重新加载
+     */
+    @PostConstruct
+    public void init() {
+        leases = Caffeine.newBuilder()
+                .maximumSize(rateLimitProperties.getLocalMaximumSize())
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+        localBuckets = Caffeine.newBuilder()
+                .maximumSize(rateLimitProperties.getLocalMaximumSize())
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .build();
+
+        for (RedisScript<Long> script : Arrays.asList(fixedWindowScript, tokenBucketScript, slidingWindowScript, gcraScript, tokenBucketLeaseScript)) {
+            try {
+                String sha = redisTemplate.execute((RedisCallback<String>) connection ->
+                        connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+                log.info("加载限流脚本：{}", sha);
+            } catch (Exception e) {
+                log.warn("预加载限流脚本失败，将在第一次执行时加载：{}", script.getSha1(), e);
+            }
+        }
+    }
+
     @Override
     public boolean isAllowed(String key, int windowSeconds, int limit) {
+        if (isRedisUnavailable()) {
+            return isAllowedLocally(key, limit, (double) limit / windowSeconds, 1);
+        }
         try {
-            // 创建Redis脚本对象
-            DefaultRedisScript<Long> script = new DefaultRedisScript<>();
-            script.setScriptText(simpleRateLimiterScript);  // 设置脚本内容
-            script.setResultType(Long.class);  // 设置返回值类型
             // 准备执行脚本的参数
             List<String> keys = Collections.singletonList(key);  // Redis键列表
             // 执行Lua脚本
             Long result = redisTemplate.execute(
-                    script,
+                    fixedWindowScript,
                     keys,  // KEYS数组
                     String.valueOf(windowSeconds),  // 窗口期(ARGV[1])
                     String.valueOf(limit)  // 限流阈值(ARGV[2])
@@ -106,29 +128,86 @@ public class RateLimiterServiceImpl implements RateLimiterService {
         } catch (Exception e) {
             // 发生异常时记录日志
             log.error("固定窗口限流异常，key: {}, 异常信息: {}", key, e.getMessage(), e);
-            //redis出现故障的时候，为了不影响主业务流程运行，这里出现异常是直接放行的
-            return true;
+            //redis出现故障的时候，为了不影响主业务流程运行，改用本地限流，按窗口内的平均速率放行
+            markRedisUnavailable();
+            return isAllowedLocally(key, limit, (double) limit / windowSeconds, 1);
         }
     }
 
+    /**
+     * 滑动窗口计数限流
+     * 只保存当前窗口和上一个窗口的计数，比固定窗口多一次TIME和PEXPIRE
+     * @param key
+     * @param windowSeconds
+     * @param limit
+     * @return
+     */
     @Override
-    public boolean isAllowedByTokenBucket(String key, int capacity, int rate, int requested) {
+    public boolean isAllowedBySlidingWindow(String key, int windowSeconds, int limit) {
+        if (isRedisUnavailable()) {
+            return isAllowedLocally(key, limit, (double) limit / windowSeconds, 1);
+        }
         try {
-            // 创建Redis脚本对象
-            DefaultRedisScript<Long> script = new DefaultRedisScript<>();
-            script.setScriptText(tokenBucketScript);  // 设置脚本内容
-            script.setResultType(Long.class);  // 设置返回值类型
+            Long result = redisTemplate.execute(
+                    slidingWindowScript,
+                    Collections.singletonList(key),
+                    String.valueOf(windowSeconds),  // 窗口期(ARGV[1])
+                    String.valueOf(limit)  // 限流阈值(ARGV[2])
+            );
+            return result != null && result == 1L;
+        } catch (Exception e) {
+            log.error("滑动窗口限流异常，key: {}, 异常信息: {}", key, e.getMessage(), e);
+            markRedisUnavailable();
+            return isAllowedLocally(key, limit, (double) limit / windowSeconds, 1);
+        }
+    }
+
+    /**
+     * GCRA限流
+     * 只读写一个保存理论到达时间的字符串key，内存占用固定
+     * @param key
+     * @param windowSeconds
+     * @param limit
+     * @param requested
+     * @return
+     */
+    @Override
+    public boolean isAllowedByGcra(String key, int windowSeconds, int limit, int requested) {
+        if (isRedisUnavailable()) {
+            return isAllowedLocally(key, limit, (double) limit / windowSeconds, requested);
+        }
+        try {
+            Long result = redisTemplate.execute(
+                    gcraScript,
+                    Collections.singletonList(key),
+                    String.valueOf(windowSeconds),  // 窗口期(ARGV[1])
+                    String.valueOf(limit),  // 限流阈值(ARGV[2])
+                    String.valueOf(requested)  // 请求令牌数(ARGV[3])
+            );
+            return result != null && result == 1L;
+        } catch (Exception e) {
+            log.error("GCRA限流异常，key: {}, 异常信息: {}", key, e.getMessage(), e);
+            markRedisUnavailable();
+            return isAllowedLocally(key, limit, (double) limit / windowSeconds, requested);
+        }
+    }
 
+    @Override
+    public boolean isAllowedByTokenBucket(String key, int capacity, int rate, int requested) {
+        if (isRedisUnavailable()) {
+            return isAllowedLocally(key, capacity, rate, requested);
+        }
+        try {
             // 准备执行脚本的参数
             List<String> keys = Collections.singletonList(key);  // Redis键列表
             // 执行Lua脚本
+            // 当前时间由脚本通过Redis的TIME命令获取
             Long result = redisTemplate.execute(
-                    script,
+                    tokenBucketScript,
                     keys,  // KEYS数组
                     String.valueOf(capacity),  // 令牌桶容量(ARGV[1])
-                    String.valueOf(System.currentTimeMillis()),  // 当前时间戳(ARGV[2])
-                    String.valueOf(rate),  // 令牌填充速率(ARGV[3])
-                    String.valueOf(requested)  // 请求令牌数(ARGV[4])
+                    String.valueOf(rate),  // 令牌填充速率(ARGV[2])
+                    String.valueOf(requested)  // 请求令牌数(ARGV[3])
             );
 
             // 判断结果：1=允许访问，0=被限流
@@ -136,7 +215,159 @@ public class RateLimiterServiceImpl implements RateLimiterService {
         } catch (Exception e) {
             // 发生异常时记录日志
             log.error("令牌桶限流异常，key: {}, 异常信息: {}", key, e.getMessage(), e);
-            // 默认放行，保证业务可用性(可根据实际需求调整为默认拒绝)
+            // 改用本地令牌桶，保证业务可用性的同时不会完全放开限流
+            markRedisUnavailable();
+            return isAllowedLocally(key, capacity, rate, requested);
+        }
+    }
+
+    /**
+     * 租借令牌的令牌桶限流
+     * 本地还有未过期的令牌时直接CAS扣减，不访问Redis；
+     * 令牌用完后由一个线程向Redis租借下一批，同一key的其他线程等待这次租借完成后再扣减；
+     * Redis中的令牌也用完时，记录下一批令牌的生成时间，在这之前的请求不加锁、不访问Redis直接拒绝
+     * @param key 限流标识
+     * @param capacity 令牌桶容量
+     * @param rate 令牌填充速率(每秒)
+     * @param requested 请求令牌数
+     * @param leaseSize 每次租借的令牌数
+     * @return
+     */
+    @Override
+    public boolean isAllowedByLeasedTokenBucket(String key, int capacity, int rate, int requested, int leaseSize) {
+        TokenLease lease = leases.get(key, k -> new TokenLease());
+        if (lease.tryAcquire(requested)) {
+            return true;
+        }
+        //Redis中的令牌已经用完，在下一批令牌生成之前直接在本地拒绝
+        if (lease.isDenied()) {
+            return false;
+        }
+        if (isRedisUnavailable()) {
+            return isAllowedLocally(key, capacity, rate, requested);
+        }
+
+        synchronized (lease) {
+            //等待期间其他线程可能已经租借到了新的令牌，或者已经确认令牌用完
+            if (lease.tryAcquire(requested)) {
+                return true;
+            }
+            if (lease.isDenied()) {
+                return false;
+            }
+            try {
+                Long granted = redisTemplate.execute(
+                        tokenBucketLeaseScript,
+                        Collections.singletonList(key),
+                        String.valueOf(capacity),
+                        String.valueOf(rate),
+                        String.valueOf(requested),
+                        String.valueOf(Math.max(leaseSize, requested))
+                );
+                if (granted == null || granted < requested) {
+                    //按填充速率计算攒够本次请求令牌的时间，这段时间内不再访问Redis
+                    lease.denyUntil(System.currentTimeMillis() + (long) Math.ceil(requested * 1000.0 / rate));
+                    return false;
+                }
+                lease.reset(granted - requested, System.currentTimeMillis() + rateLimitProperties.getLeaseMillis());
+                return true;
+            } catch (Exception e) {
+                log.error("租借令牌异常，key: {}, 异常信息: {}", key, e.getMessage(), e);
+                markRedisUnavailable();
+                return isAllowedLocally(key, capacity, rate, requested);
+            }
+        }
+    }
+
+    private boolean isRedisUnavailable() {
+        return System.currentTimeMillis() < redisRetryAt;
+    }
+
+    /**
+     * Redis调用失败后一段时间内不再访问Redis，避免每个请求都等待超时
+     */
+    private void markRedisUnavailable() {
+        redisRetryAt = System.currentTimeMillis() + rateLimitProperties.getRedisRetryMillis();
+    }
+
+    /**
+     * 本地令牌桶限流，只限制本节点的访问速率
+     * @param key
+     * @param capacity
+     * @param rate
+     * @param requested
+     * @return
+     */
+    private boolean isAllowedLocally(String key, int capacity, double rate, int requested) {
+        return localBuckets.get(key, k -> new LocalTokenBucket(capacity, rate)).tryAcquire(requested);
+    }
+
+    /**
+     * 本节点租借到的令牌
+     */
+    private static class TokenLease {
+
+        private final AtomicLong tokens = new AtomicLong();
+
+        //租借的令牌在这个时间之后作废，避免空闲节点长期占用令牌
+        private volatile long expireAt;
+
+        //Redis中的令牌已用完，在这个时间之前直接拒绝
+        private volatile long deniedUntil;
+
+        boolean tryAcquire(int requested) {
+            if (System.currentTimeMillis() >= expireAt) {
+                return false;
+            }
+            long current;
+            do {
+                current = tokens.get();
+                if (current < requested) {
+                    return false;
+                }
+            } while (!tokens.compareAndSet(current, current - requested));
+            return true;
+        }
+
+        void reset(long remaining, long expireAt) {
+            tokens.set(remaining);
+            this.expireAt = expireAt;
+        }
+
+        boolean isDenied() {
+            return System.currentTimeMillis() < deniedUntil;
+        }
+
+        void denyUntil(long deniedUntil) {
+            this.deniedUntil = deniedUntil;
+        }
+    }
+
+    /**
+     * 本地令牌桶
+     */
+    private static class LocalTokenBucket {
+
+        private final double capacity;
+        private final double ratePerMillis;
+        private double tokens;
+        private long lastRefreshed;
+
+        LocalTokenBucket(double capacity, double rate) {
+            this.capacity = capacity;
+            this.ratePerMillis = rate / 1000.0;
+            this.tokens = capacity;
+            this.lastRefreshed = System.currentTimeMillis();
+        }
+
+        synchronized boolean tryAcquire(int requested) {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(capacity, tokens + Math.max(0, now - lastRefreshed) * ratePerMillis);
+            lastRefreshed = now;
+            if (tokens < requested) {
+                return false;
+            }
+            tokens -= requested;
             return true;
         }
     }
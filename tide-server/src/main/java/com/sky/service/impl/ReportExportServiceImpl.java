@@ -0,0 +1,237 @@
+package com.sky.service.impl;
+
+import com.sky.constant.MessageConstant;
+import com.sky.exception.ReportBusinessException;
+import com.sky.properties.ReportProperties;
+import com.sky.service.ReportExportService;
+import com.sky.service.ReportService;
+import com.sky.vo.ReportExportJobVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 营业数据后台导出
+ * 导出在有界线程池中执行，先写入本地临时文件，完成后再由下载接口读取，
+ * 长时间范围的导出不会占用Tomcat线程，也不会因为代理超时而中断。
+ * 任务和文件都保存在当前节点，查询和下载需要请求到提交任务的节点
+ */
+@Service
+@Slf4j
+public class ReportExportServiceImpl implements ReportExportService {
+
+    @Autowired
+    private ReportService reportService;
+
+    @Autowired
+    private ReportProperties reportProperties;
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+
+    private Path exportDir;
+
+    @PostConstruct
+    public void init() throws IOException {
+        int threads = Math.max(reportProperties.getExportThreads(), 1);
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(reportProperties.getExportQueueCapacity(), 1)),
+                new CustomizableThreadFactory("report-export-"),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        exportDir = StringUtils.hasText(reportProperties.getExportDir())
+                ? Paths.get(reportProperties.getExportDir())
+                : Paths.get(System.getProperty("java.io.tmpdir"), "tide-report");
+        Files.createDirectories(exportDir);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+        jobs.values().forEach(ExportJob::deleteFile);
+        jobs.clear();
+    }
+
+    /**
+     * 提交导出任务，队列已满时直接拒绝
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Override
+    public ReportExportJobVO submit(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || begin.isAfter(end)
+                || ChronoUnit.DAYS.between(begin, end) + 1 > reportProperties.getMaxExportDays()) {
+            throw new ReportBusinessException(MessageConstant.REPORT_DATE_RANGE_INVALID);
+        }
+
+        String jobId = UUID.randomUUID().toString().replace("-", "");
+        ExportJob job = new ExportJob(jobId, begin, end, exportDir.resolve(jobId + ".xlsx"));
+        jobs.put(jobId, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(jobId);
+            throw new ReportBusinessException(MessageConstant.REPORT_EXPORT_BUSY);
+        }
+        log.info("提交导出任务：{}，{}至{}", jobId, begin, end);
+        return job.toVO();
+    }
+
+    /**
+     * 查询导出任务
+     * @param jobId
+     * @return
+     */
+    @Override
+    public ReportExportJobVO getJob(String jobId) {
+        return findJob(jobId).toVO();
+    }
+
+    /**
+     * 下载导出文件
+     * @param jobId
+     * @param response
+     */
+    @Override
+    public void download(String jobId, HttpServletResponse response) {
+        ExportJob job = findJob(jobId);
+        if (!ReportExportJobVO.SUCCESS.equals(job.status)) {
+            throw new ReportBusinessException(MessageConstant.REPORT_EXPORT_NOT_READY);
+        }
+
+        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        response.setHeader("Content-Disposition",
+                "attachment;filename=business_report_" + job.begin + "_" + job.end + ".xlsx");
+        try {
+            response.setContentLengthLong(Files.size(job.file));
+            ServletOutputStream outputStream = response.getOutputStream();
+            Files.copy(job.file, outputStream);
+            outputStream.flush();
+        } catch (IOException e) {
+            log.error("下载导出文件失败：{}", jobId, e);
+        }
+    }
+
+    /**
+     * 清理过期任务
+     * 从任务完成开始计算保留时间，未完成的任务不清理
+     */
+    @Override
+    public void cleanExpired() {
+        LocalDateTime expireTime = LocalDateTime.now().minusMinutes(reportProperties.getExportRetentionMinutes());
+        jobs.values().removeIf(job -> {
+            if (job.finishTime != null && job.finishTime.isBefore(expireTime)) {
+                job.deleteFile();
+                log.info("清理过期导出任务：{}", job.jobId);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private ExportJob findJob(String jobId) {
+        ExportJob job = jobId == null ? null : jobs.get(jobId);
+        if (job == null) {
+            throw new ReportBusinessException(MessageConstant.REPORT_EXPORT_NOT_FOUND);
+        }
+        return job;
+    }
+
+    /**
+     * 执行导出，先写入临时文件，写完后再改名，下载时不会读到写了一半的文件
+     * @param job
+     */
+    private void run(ExportJob job) {
+        job.status = ReportExportJobVO.RUNNING;
+        Path tmpFile = job.file.resolveSibling(job.file.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmpFile)) {
+                reportService.writeBusinessReport(job.begin, job.end, out);
+            }
+            Files.move(tmpFile, job.file, StandardCopyOption.REPLACE_EXISTING);
+            job.finish(ReportExportJobVO.SUCCESS, null);
+            log.info("导出任务完成：{}", job.jobId);
+        } catch (Exception e) {
+            log.error("导出任务失败：{}", job.jobId, e);
+            try {
+                Files.deleteIfExists(tmpFile);
+            } catch (IOException ex) {
+                log.warn("删除导出临时文件失败：{}", tmpFile, ex);
+            }
+            job.finish(ReportExportJobVO.FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * 导出任务，状态由导出线程修改，查询线程读取
+     */
+    private static class ExportJob {
+
+        private final String jobId;
+        private final LocalDate begin;
+        private final LocalDate end;
+        private final Path file;
+        private final LocalDateTime createTime = LocalDateTime.now();
+        private volatile Integer status = ReportExportJobVO.WAITING;
+        private volatile String message;
+        private volatile LocalDateTime finishTime;
+
+        ExportJob(String jobId, LocalDate begin, LocalDate end, Path file) {
+            this.jobId = jobId;
+            this.begin = begin;
+            this.end = end;
+            this.file = file;
+        }
+
+        void finish(Integer status, String message) {
+            this.message = message;
+            this.finishTime = LocalDateTime.now();
+            this.status = status;
+        }
+
+        void deleteFile() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("删除导出文件失败：{}", file, e);
+            }
+        }
+
+        ReportExportJobVO toVO() {
+            return ReportExportJobVO.builder()
+                    .jobId(jobId)
+                    .begin(begin)
+                    .end(end)
+                    .status(status)
+                    .message(message)
+                    .createTime(createTime)
+                    .finishTime(finishTime)
+                    .build();
+        }
+    }
+}
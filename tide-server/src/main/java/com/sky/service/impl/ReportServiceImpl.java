@@ -1,18 +1,24 @@
 package com.sky.service.impl;
 
 
-import com.sky.entity.Orders;
-import com.sky.mapper.OrderMapper;
-import com.sky.mapper.UserMapper;
+import com.sky.constant.MessageConstant;
+import com.sky.entity.DailyBusinessStats;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.DailyStatsMapper;
+import com.sky.properties.ReportProperties;
 import com.sky.service.ReportService;
-import com.sky.service.WorkspaceService;
 import com.sky.vo.*;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFCell;
 import org.apache.poi.xssf.usermodel.XSSFRow;
 import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -20,26 +26,32 @@ import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.sql.Date;
 import java.util.stream.Collectors;
 
 
 @Service
+@Slf4j
 public class ReportServiceImpl implements ReportService {
 
-    @Autowired
-    private OrderMapper orderMapper;
+    private static final String TEMPLATE_PATH = "template/template.xlsx";
+
+    //模板中每日明细的起始行和列数
+    private static final int DETAIL_FIRST_ROW = 7;
+    private static final int DETAIL_COLUMN_COUNT = 6;
+
+    //流式写出时内存中保留的行数，超出的行刷到临时文件
+    private static final int STREAM_WINDOW_SIZE = 100;
 
     @Autowired
-    private UserMapper userMapper;
+    private DailyStatsMapper dailyStatsMapper;
 
     @Autowired
-    private WorkspaceService workspaceService;
+    private ReportProperties reportProperties;
 
     /**
      * 营业额统计
@@ -51,19 +63,15 @@ public class ReportServiceImpl implements ReportService {
         List<LocalDate> dateList = getDateList(begin, end);
         //将这个list转换为字符串，元素之间以逗号分隔
         String dateListStr = StringUtils.join(dateList, ",");
-        // 创建查询参数
-        Map<String, Object> params = createDateRangeParams(begin, end, Orders.COMPLETED);
-
-        // 查询营业额数据
-        List<Map<String, Object>> turnoverData = orderMapper.getSumByDateRange(params);
 
-        // 转换为日期Map
-        Map<LocalDate, Double> turnoverDataMap = convertToDateMap(turnoverData, "order_date", "total_amount", Double.class);
+        // 从每日汇总表中查询，每天只有一行数据
+        Map<LocalDate, DailyBusinessStats> statsMap = getDailyStatsMap(begin, end);
 
         // 生成结果列表，确保每个日期都有数据
         List<Double> turnoverList = new ArrayList<>();
         for (LocalDate date : dateList) {
-            Double turnover = turnoverDataMap.getOrDefault(date, 0.0);
+            DailyBusinessStats stats = statsMap.get(date);
+            Double turnover = stats != null && stats.getTurnover() != null ? stats.getTurnover().doubleValue() : 0.0;
             turnoverList.add(turnover);
         }
 
@@ -84,37 +92,23 @@ public class ReportServiceImpl implements ReportService {
     public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
         //先定义出vo要的三张表
         List<LocalDate> dateList = getDateList(begin, end);
-        //select count(*) from user where create_time > ? and create_time < ?
         List<Integer> newUserList = new ArrayList<>();
-        //select count(*) from user where create_time < ?
         List<Integer> totalUserList = new ArrayList<>();
         //将这个list转换为字符串，元素之间以逗号分隔
         String dateListStr = StringUtils.join(dateList, ",");
-        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
-        LocalDateTime endTime = LocalDateTime.of(end, LocalTime.MAX);
 
         //一次性查询每天的新增用户数
-        List<Map<String,Object>> newUserData = userMapper.getNewUserStatistics(beginTime, endTime);
-        //将结果存入Map中便于快速查找
-        Map<LocalDate, Integer> newUserDataMap = new HashMap<>();
-        for(Map<String,Object> map : newUserData ){
-            LocalDate date = ((Date) map.get("user_date")).toLocalDate();
-            // 使用Number作为中间类型，避免直接转换Long到Integer导致的ClassCastException
-            Number countNumber = (Number) map.get("user_count");
-            Integer count = countNumber != null ? countNumber.intValue() : 0;
-            newUserDataMap.put(date, count);
-        }
+        Map<LocalDate, DailyBusinessStats> statsMap = getDailyStatsMap(begin, end);
 
-        // 查询每天截止时的总用户数
         // 先获取begin日期之前的用户总数作为基础值
-        // 保证当前日期没有数据时，totalUserList中的数据不会被覆盖
-        Integer baseUserCount = userMapper.getUserCountBefore(beginTime);
+        Integer baseUserCount = dailyStatsMapper.sumNewUserBefore(begin);
         baseUserCount = baseUserCount != null ? baseUserCount : 0;
 
         // 遍历日期列表，计算每个日期的总用户数
         int runningTotal = baseUserCount;
         for(LocalDate date: dateList){
-            int newUsers = newUserDataMap.getOrDefault(date, 0);
+            DailyBusinessStats stats = statsMap.get(date);
+            int newUsers = stats != null ? nullToZero(stats.getNewUserCount()) : 0;
             newUserList.add(newUsers);
 
             //计算总数
@@ -137,43 +131,22 @@ public class ReportServiceImpl implements ReportService {
      */
     @Override
     public OrderReportVO getOrdersStatistics(LocalDate begin, LocalDate end) {
-        //确定需要的内容
         //日期列表，订单数列表，有效订单数列表 订单完成率 订单总数 有效订单数
-        //先来处理三张表
         List<LocalDate> dateList = getDateList(begin, end);
         //每日订单数列表
         List<Integer> orderCountList = new ArrayList<>();
-        //每日有效订单数李彪
+        //每日有效订单数列表
         List<Integer> validOrderCountList = new ArrayList<>();
-        //有效订单数就是状态为已完成的订单
-        //对这两个表都只进行一次数据查询
-        LocalDateTime beginTime = LocalDateTime.of(begin, LocalTime.MIN);
-        LocalDateTime endTime = LocalDateTime.of(end, LocalTime.MAX);
-        List<Map<String, Object>> orderCountData = orderMapper.getCountByDateRange(beginTime, endTime,null);
-        List<Map<String, Object>> validOrderCountData = orderMapper.getCountByDateRange(beginTime, endTime, Orders.COMPLETED);
-
-        //将结果转化为map，方便查询
-        Map<LocalDate, Integer> orderCountDataMap = new HashMap<>();
-        for (Map<String,Object> map :  orderCountData){
-            LocalDate date = ((Date) map.get("order_date")).toLocalDate();
-            Number countNumber = (Number) map.get("order_count");
-            Integer count = countNumber != null ? countNumber.intValue() : 0;
-            orderCountDataMap.put(date, count);
-        }
 
-        Map<LocalDate, Integer> validOrderCountDataMap = new HashMap<>();
-        for (Map<String,Object> map : validOrderCountData){
-            LocalDate date = ((Date) map.get("order_date")).toLocalDate();
-            Number countNumber = (Number) map.get("order_count");
-            Integer count = countNumber != null ? countNumber.intValue() : 0;
-            validOrderCountDataMap.put(date, count);
-        }
+        //订单数和有效订单数在同一行汇总数据中
+        Map<LocalDate, DailyBusinessStats> statsMap = getDailyStatsMap(begin, end);
 
         int totalOrderCount = 0;
         int totalValidOrderCount = 0;
         for (LocalDate date : dateList) {
-            Integer orderCount = orderCountDataMap.getOrDefault(date, 0);
-            Integer validOrderCount = validOrderCountDataMap.getOrDefault(date, 0);
+            DailyBusinessStats stats = statsMap.get(date);
+            int orderCount = stats != null ? nullToZero(stats.getOrderCount()) : 0;
+            int validOrderCount = stats != null ? nullToZero(stats.getValidOrderCount()) : 0;
             orderCountList.add(orderCount);
             validOrderCountList.add(validOrderCount);
             totalOrderCount += orderCount;
@@ -201,19 +174,9 @@ public class ReportServiceImpl implements ReportService {
     @Override
     public SalesTop10ReportVO getTop10(LocalDate begin, LocalDate end) {
         //返回两个list，一个是商品名称列表，一个是销量列表，然后将其转换为string
-        //如何获取top10
-        //首先在order表中查询指定时间内的订单，在order_detail中查询所有的商品并排序，返回前十的商品和销量
-        //同一种商品会有多种口味，所以只需要通过商品名字判断
-        //必须还统计订单是否完成
-
-        // 创建查询参数
-        Map<String, Object> params = createDateRangeParams(begin, end, Orders.COMPLETED);
-        // 查询销量前10的商品
-        List<Map<String, Object>> top10Data = orderMapper.getTop10SalesByDateRange(params);
-//        for (Map<String, Object> map : top10Data) {
-//            names.add((String) map.get("name"));
-//            numbers.add(((Number) map.get("number")).intValue());
-//        }
+        //同一种商品会有多种口味，汇总表中已经按商品名字合并，并且只统计已完成的订单
+        List<Map<String, Object>> top10Data = dailyStatsMapper.getTopSales(begin, end, 10);
+
         //stream流
         List<String> names = top10Data.stream()
                 .map(map -> (String) map.get("name"))
@@ -231,29 +194,64 @@ public class ReportServiceImpl implements ReportService {
 
     /**
      * 导出数据
-     * @return
+     * @param begin
+     * @param end
+     * @param response
      */
     @Override
-    public void export(HttpServletResponse response) {
-        //1 查数据库，获取近30天营业数据
-        LocalDate dateBegin = LocalDate.now().minusDays(30);
-        LocalDate dateEnd = LocalDate.now().minusDays(1);
-        BusinessDataVO businessData = workspaceService.getBusinessData(LocalDateTime.of(dateBegin, LocalTime.MIN),LocalDateTime.of(dateEnd, LocalTime.MAX));
-        //2 通过poi将数据写入excel中
-        //这里通过类指定反射创建对象，可以保证路径的独立性
-        //类加载器已经将src/main/resources作为查找的起点
-        InputStream in = this.getClass().getClassLoader().getResourceAsStream("template/template.xlsx");
+    public void export(LocalDate begin, LocalDate end, HttpServletResponse response) {
+        checkExportRange(begin, end);
         // 设置响应内容类型
         response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
         // 设置Content-Disposition头，指定文件名
         response.setHeader("Content-Disposition", "attachment;filename=business_report.xlsx");
         try {
-            XSSFWorkbook excel = new XSSFWorkbook(in);
+            //通过输出流将excel文件下载到客户端浏览器
+            ServletOutputStream outputStream = response.getOutputStream();
+            writeBusinessReport(begin, end, outputStream);
+            outputStream.flush();
+        } catch (IOException e) {
+            log.error("导出营业数据失败：{}至{}", begin, end, e);
+        }
+    }
+
+    /**
+     * 将营业数据写入excel
+     * 所有日期的数据通过一次查询从汇总表中取出，汇总行和每日明细都由同一份数据计算；
+     * 每日明细使用SXSSFWorkbook流式写出，内存中只保留窗口内的行，导出天数不受限制
+     * @param begin
+     * @param end
+     * @param out
+     * @throws IOException
+     */
+    @Override
+    public void writeBusinessReport(LocalDate begin, LocalDate end, OutputStream out) throws IOException {
+        checkExportRange(begin, end);
+
+        //1 查数据库，一次查出整个日期范围的每日数据
+        Map<LocalDate, DailyBusinessStats> statsMap = getDailyStatsMap(begin, end);
+        int totalOrderCount = 0;
+        int totalValidOrderCount = 0;
+        int totalNewUsers = 0;
+        BigDecimal totalTurnover = BigDecimal.ZERO;
+        for (DailyBusinessStats stats : statsMap.values()) {
+            totalOrderCount += nullToZero(stats.getOrderCount());
+            totalValidOrderCount += nullToZero(stats.getValidOrderCount());
+            totalNewUsers += nullToZero(stats.getNewUserCount());
+            if (stats.getTurnover() != null) {
+                totalTurnover = totalTurnover.add(stats.getTurnover());
+            }
+        }
+        BusinessDataVO businessData = toBusinessData(totalOrderCount, totalValidOrderCount, totalTurnover, totalNewUsers);
 
-            //填充数据 -- 时间
-            //获取表格标签页
-            XSSFSheet sheet1 = excel.getSheetAt(0);
-            sheet1.getRow(1).getCell(1).setCellValue("时间:"+dateBegin+ "至" + dateEnd);
+        //2 通过poi将数据写入excel中
+        //类加载器已经将src/main/resources作为查找的起点
+        try (InputStream in = this.getClass().getClassLoader().getResourceAsStream(TEMPLATE_PATH)) {
+            XSSFWorkbook template = new XSSFWorkbook(in);
+
+            //模板中的表头部分直接修改
+            XSSFSheet sheet1 = template.getSheetAt(0);
+            sheet1.getRow(1).getCell(1).setCellValue("时间:" + begin + "至" + end);
             XSSFRow row = sheet1.getRow(3);
             row.getCell(1).setCellValue("营业额");
             row.getCell(2).setCellValue(businessData.getTurnover());
@@ -274,32 +272,99 @@ public class ReportServiceImpl implements ReportService {
             row.getCell(5).setCellValue("平均客单价");
             row.getCell(6).setCellValue("新增用户数");
 
-            //每日的详细数据
-            for(int i = 0; i < 30; i++){
-                LocalDate date = dateBegin.plusDays(i);
-                //查出当天数据
-                BusinessDataVO currentBusinessData = workspaceService.getBusinessData(LocalDateTime.of(date, LocalTime.MIN), LocalDateTime.of(date, LocalTime.MAX));
-                row = sheet1.getRow(i + 7);
-                row.getCell(1).setCellValue(date.toString());
-                row.getCell(2).setCellValue(currentBusinessData.getTurnover());
-                row.getCell(3).setCellValue(currentBusinessData.getValidOrderCount());
-                row.getCell(4).setCellValue(currentBusinessData.getOrderCompletionRate());
-                row.getCell(5).setCellValue(currentBusinessData.getUnitPrice());
-                row.getCell(6).setCellValue(currentBusinessData.getNewUsers());
+            //模板中预留了30行明细，记下样式后删除，明细行全部交给流式写出
+            CellStyle[] detailStyles = new CellStyle[DETAIL_COLUMN_COUNT + 1];
+            XSSFRow styleRow = sheet1.getRow(DETAIL_FIRST_ROW);
+            for (int col = 1; col <= DETAIL_COLUMN_COUNT && styleRow != null; col++) {
+                XSSFCell cell = styleRow.getCell(col);
+                detailStyles[col] = cell != null ? cell.getCellStyle() : null;
+            }
+            for (int i = sheet1.getLastRowNum(); i >= DETAIL_FIRST_ROW; i--) {
+                XSSFRow templateRow = sheet1.getRow(i);
+                if (templateRow != null) {
+                    sheet1.removeRow(templateRow);
+                }
             }
 
+            SXSSFWorkbook excel = new SXSSFWorkbook(template, STREAM_WINDOW_SIZE);
+            try {
+                Sheet sheet = excel.getSheetAt(0);
+                int rowIndex = DETAIL_FIRST_ROW;
+                //每日的详细数据，从内存中的汇总数据填充，不再逐日查询
+                for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+                    DailyBusinessStats stats = statsMap.get(date);
+                    BusinessDataVO currentBusinessData = stats == null
+                            ? toBusinessData(0, 0, BigDecimal.ZERO, 0)
+                            : toBusinessData(nullToZero(stats.getOrderCount()), nullToZero(stats.getValidOrderCount()),
+                                    stats.getTurnover(), nullToZero(stats.getNewUserCount()));
+
+                    Row detailRow = sheet.createRow(rowIndex++);
+                    createCell(detailRow, 1, detailStyles).setCellValue(date.toString());
+                    createCell(detailRow, 2, detailStyles).setCellValue(currentBusinessData.getTurnover());
+                    createCell(detailRow, 3, detailStyles).setCellValue(currentBusinessData.getValidOrderCount());
+                    createCell(detailRow, 4, detailStyles).setCellValue(currentBusinessData.getOrderCompletionRate());
+                    createCell(detailRow, 5, detailStyles).setCellValue(currentBusinessData.getUnitPrice());
+                    createCell(detailRow, 6, detailStyles).setCellValue(currentBusinessData.getNewUsers());
+                }
+
+                //3 写出到输出流
+                excel.write(out);
+            } finally {
+                //删除流式写出产生的临时文件
+                excel.dispose();
+                excel.close();
+            }
+        }
+    }
 
-            //3 通过输出流将excel文件下载到客户端浏览器
-            ServletOutputStream outputStream = response.getOutputStream();
-            excel.write(outputStream);
+    /**
+     * 校验导出的日期范围
+     * @param begin
+     * @param end
+     */
+    private void checkExportRange(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || begin.isAfter(end)
+                || ChronoUnit.DAYS.between(begin, end) + 1 > reportProperties.getMaxExportDays()) {
+            throw new ReportBusinessException(MessageConstant.REPORT_DATE_RANGE_INVALID);
+        }
+    }
 
-            //关闭资源
-            excel.close();
-            outputStream.close();
+    private Cell createCell(Row row, int col, CellStyle[] styles) {
+        Cell cell = row.createCell(col);
+        if (styles[col] != null) {
+            cell.setCellStyle(styles[col]);
+        }
+        return cell;
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * 根据汇总数据计算营业数据，计算口径与工作台一致
+     * @param orderCount
+     * @param validOrderCount
+     * @param turnover
+     * @param newUsers
+     * @return
+     */
+    private BusinessDataVO toBusinessData(int orderCount, int validOrderCount, BigDecimal turnover, int newUsers) {
+        double turnoverValue = turnover != null ? turnover.doubleValue() : 0.0;
+
+        Double orderCompletionRate = 0.0;
+        if (orderCount > 0) {
+            // 保留2位小数
+            orderCompletionRate = Math.round((double) validOrderCount / orderCount * 100) / 100.0;
+        }
+        Double unitPrice = 0.0;
+        if (validOrderCount > 0) {
+            unitPrice = Math.round(turnoverValue / validOrderCount * 100) / 100.0;
         }
+
+        return BusinessDataVO.builder()
+                .turnover(turnoverValue)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCompletionRate)
+                .unitPrice(unitPrice)
+                .newUsers(newUsers)
+                .build();
     }
 
 
@@ -316,47 +381,17 @@ public class ReportServiceImpl implements ReportService {
     }
 
     /**
-     * 创建日期范围查询参数
-     * @param begin 开始日期
-     * @param end 结束日期
-     * @param status 订单状态，可为null
-     * @return 查询参数Map
+     * 查询日期范围内的每日汇总数据，按日期建立索引
+     * @param begin
+     * @param end
+     * @return
      */
-    private Map<String, Object> createDateRangeParams(LocalDate begin, LocalDate end, Integer status) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("begin", LocalDateTime.of(begin, LocalTime.MIN));
-        map.put("end", LocalDateTime.of(end, LocalTime.MAX));
-        if (status != null) {
-            map.put("status", status);
-        }
-        return map;
+    private Map<LocalDate, DailyBusinessStats> getDailyStatsMap(LocalDate begin, LocalDate end) {
+        return dailyStatsMapper.listByDateRange(begin, end).stream()
+                .collect(Collectors.toMap(DailyBusinessStats::getStatDate, stats -> stats));
     }
 
-    /**
-     * 将查询结果转换为日期为键的Map
-     * @param data 查询结果列表
-     * @param dateKey 日期字段名
-     * @param valueKey 值字段名
-     * @param valueType 值类型
-     * @return 转换后的Map
-     */
-    private <T> Map<LocalDate, T> convertToDateMap(List<Map<String, Object>> data,
-                                                   String dateKey, String valueKey,
-                                                   Class<T> valueType) {
-        Map<LocalDate, T> resultMap = new HashMap<>();
-        for (Map<String, Object> map : data) {
-            LocalDate date = ((Date) map.get(dateKey)).toLocalDate();
-            Object rawValue = map.get(valueKey);
-
-            // 适当的类型转换
-            if (rawValue instanceof BigDecimal && valueType == Double.class) {
-                resultMap.put(date, valueType.cast(((BigDecimal) rawValue).doubleValue()));
-            } else if (rawValue instanceof Number && valueType == Integer.class) {
-                resultMap.put(date, valueType.cast(((Number) rawValue).intValue()));
-            } else {
-                resultMap.put(date, valueType.cast(rawValue));
-            }
-        }
-        return resultMap;
+    private int nullToZero(Integer value) {
+        return value != null ? value : 0;
     }
 }
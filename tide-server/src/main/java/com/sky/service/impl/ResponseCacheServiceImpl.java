@@ -0,0 +1,183 @@
+package com.sky.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.sky.constant.CacheConstant;
+import com.sky.properties.ResponseCacheProperties;
+import com.sky.service.ResponseCacheService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 接口响应缓存
+ * 一级缓存：进程内Caffeine，二级缓存：Redis
+ * 每个分组用一个Redis set记录写入过的key，清理时无需扫描keyspace
+ */
+@Service
+@Slf4j
+public class ResponseCacheServiceImpl implements ResponseCacheService, MessageListener {
+
+    //失效消息格式：分组|key1,key2，不带key时表示清理整个分组
+    private static final String SEPARATOR = "|";
+
+    @Autowired
+    private RedisTemplate<String, byte[]> byteRedisTemplate;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private ResponseCacheProperties responseCacheProperties;
+
+    private Cache<String, byte[]> localCache;
+
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(responseCacheProperties.getLocalMaximumSize())
+                .expireAfterWrite(Duration.ofSeconds(responseCacheProperties.getLocalExpireSeconds()))
+                .build();
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CacheConstant.RESPONSE_INVALIDATE_CHANNEL));
+    }
+
+    @Override
+    public String buildKey(String name, String params) {
+        return CacheConstant.RESPONSE_KEY_PREFIX + name + ":" + params;
+    }
+
+    /**
+     * 查询缓存的响应字节
+     * @param key
+     * @return
+     */
+    @Override
+    public byte[] get(String key) {
+        byte[] body = localCache.getIfPresent(key);
+        if (body != null) {
+            return body;
+        }
+        try {
+            body = byteRedisTemplate.opsForValue().get(key);
+        } catch (Exception e) {
+            log.error("查询响应缓存失败：{}", key, e);
+            return null;
+        }
+        if (body != null) {
+            localCache.put(key, body);
+        }
+        return body;
+    }
+
+    /**
+     * 缓存响应字节
+     * @param name
+     * @param key
+     * @param body
+     * @param ttlSeconds
+     */
+    @Override
+    public void put(String name, String key, byte[] body, long ttlSeconds) {
+        localCache.put(key, body);
+        try {
+            byteRedisTemplate.opsForValue().set(key, body, ttlSeconds, TimeUnit.SECONDS);
+            stringRedisTemplate.opsForSet().add(CacheConstant.RESPONSE_TAG_PREFIX + name, key);
+        } catch (Exception e) {
+            log.error("写入响应缓存失败：{}", key, e);
+        }
+    }
+
+    /**
+     * 清理整个分组
+     * @param name
+     */
+    @Override
+    public void evict(String name) {
+        String tag = CacheConstant.RESPONSE_TAG_PREFIX + name;
+        Set<String> keys = stringRedisTemplate.opsForSet().members(tag);
+        if (keys != null && !keys.isEmpty()) {
+            byteRedisTemplate.delete(keys);
+        }
+        stringRedisTemplate.delete(tag);
+        log.info("清理响应缓存分组：{}", name);
+
+        invalidateLocal(name, null);
+        publish(name);
+    }
+
+    /**
+     * 清理分组内指定参数的缓存
+     * @param name
+     * @param params
+     */
+    @Override
+    public void evict(String name, Collection<String> params) {
+        if (params == null || params.isEmpty()) {
+            return;
+        }
+        List<String> keys = params.stream().map(p -> buildKey(name, p)).collect(Collectors.toList());
+        byteRedisTemplate.delete(keys);
+        stringRedisTemplate.opsForSet().remove(CacheConstant.RESPONSE_TAG_PREFIX + name, keys.toArray());
+        log.info("清理响应缓存：{}", keys);
+
+        invalidateLocal(name, keys);
+        publish(name + SEPARATOR + String.join(",", keys));
+    }
+
+    /**
+     * 清理本地缓存
+     * @param name
+     * @param keys 为null时清理整个分组
+     */
+    private void invalidateLocal(String name, Collection<String> keys) {
+        if (keys == null) {
+            String prefix = buildKey(name, "");
+            localCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        } else {
+            localCache.invalidateAll(keys);
+        }
+    }
+
+    private void publish(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(CacheConstant.RESPONSE_INVALIDATE_CHANNEL, message);
+        } catch (Exception e) {
+            log.error("广播响应缓存失效消息失败：{}", message, e);
+        }
+    }
+
+    /**
+     * 接收缓存失效消息
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int index = body.indexOf(SEPARATOR);
+        if (index < 0) {
+            invalidateLocal(body, null);
+        } else {
+            invalidateLocal(body.substring(0, index), Arrays.asList(body.substring(index + 1).split(",")));
+        }
+    }
+}
@@ -16,6 +16,7 @@ import com.sky.mapper.SetmealDishMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.result.PageResult;
 import com.sky.service.SetmealService;
+import com.sky.service.WorkspaceCounterService;
 import com.sky.vo.DishItemVO;
 import com.sky.vo.SetmealVO;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +24,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -38,6 +40,9 @@ public class SetmealServiceImpl implements SetmealService {
     @Autowired
     private CategoryServiceImpl categoryService;
 
+    @Autowired
+    private WorkspaceCounterService workspaceCounterService;
+
     /**
      * 新增套餐，同时需要保存套餐和商品的关联关系
      * @param setmealDTO
@@ -56,6 +61,7 @@ public class SetmealServiceImpl implements SetmealService {
                 .build();
 
         setmealMapper.insert(setmeal);
+        workspaceCounterService.setmealChanged(null, setmeal.getStatus());
         //接着处理setmealDishes，保存套餐和商品的关联关系到setmeal_dish表中
         //通过主键回显来获得套餐的id
         Long setmealId = setmeal.getId();
@@ -115,6 +121,7 @@ public class SetmealServiceImpl implements SetmealService {
     @Override
     public void deleteBatch(List<Long> ids) {
         //起售中的套餐不能删除，所以需要先遍历一遍套餐
+        List<Integer> statusList = new ArrayList<>(ids.size());
         ids.forEach(id -> {
             //通过mapper来获取id所对应的草滩
             Setmeal setmeal = setmealMapper.getById(id);
@@ -122,6 +129,7 @@ public class SetmealServiceImpl implements SetmealService {
                 //起售中的套餐不能删除
                 throw new DeletionNotAllowedException(MessageConstant.DISH_ON_SALE);
             }
+            statusList.add(setmeal.getStatus());
         });
 //        //删除套餐表和套菜商品表中的相关内容 这里可以不用遍历，从而简化sql语句条数
 //        ids.forEach(id -> {
@@ -130,6 +138,7 @@ public class SetmealServiceImpl implements SetmealService {
 //        });
         setmealMapper.deleteByIds(ids);
         setmealDishMapper.deleteBySetmealIds(ids);
+        statusList.forEach(status -> workspaceCounterService.setmealChanged(status, null));
 
     }
 
@@ -149,7 +158,12 @@ public class SetmealServiceImpl implements SetmealService {
                 .image(setmealDTO.getImage())
                 .status(setmealDTO.getStatus())
                 .build();
+        //修改时可能同时修改了起售状态
+        Setmeal setmealDB = setmeal.getStatus() != null ? setmealMapper.getById(setmeal.getId()) : null;
         setmealMapper.update(setmeal);
+        if (setmealDB != null) {
+            workspaceCounterService.setmealChanged(setmealDB.getStatus(), setmeal.getStatus());
+        }
 
         //处理setmealDishes
         //获取setmealId
@@ -184,11 +198,15 @@ public class SetmealServiceImpl implements SetmealService {
             }
 
             }
+        Setmeal setmealDB = setmealMapper.getById(id);
         Setmeal setmeal = Setmeal.builder()
                 .id(id)
                 .status(status)
                 .build();
         setmealMapper.update(setmeal);
+        if (setmealDB != null) {
+            workspaceCounterService.setmealChanged(setmealDB.getStatus(), status);
+        }
     }
 
     /**
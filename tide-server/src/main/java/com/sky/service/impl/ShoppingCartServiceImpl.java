@@ -1,5 +1,6 @@
 package com.sky.service.impl;
 
+import com.alibaba.fastjson.JSON;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
 import com.sky.entity.Dish;
@@ -8,18 +9,95 @@ import com.sky.entity.ShoppingCart;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.mapper.ShoppingCartMapper;
+import com.sky.properties.CartProperties;
 import com.sky.service.ShoppingCartService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+/**
+ * 购物车服务
+ * 购物车保存在Redis中，每个用户两个hash：
+ * cart:{userId}      字段 -> 数量，通过hincrby原子增减
+ * cart:item:{userId} 字段 -> 商品快照（名称、图片、价格、口味）
+ * 字段规则：商品为 d商品id:口味，套餐为 s套餐id
+ * 开启回写后，修改过的用户会被记录下来，由定时任务写回shopping_cart表
+ */
 @Service
 @Slf4j
 public class ShoppingCartServiceImpl implements ShoppingCartService {
 
+    private static final String CART_KEY_PREFIX = "cart:";
+    private static final String CART_ITEM_KEY_PREFIX = "cart:item:";
+    //待回写数据库的用户id集合
+    private static final String CART_DIRTY_KEY = "cart:dirty";
+    //商品快照hash中的标记字段，表示已经从数据库加载过
+    private static final String LOADED_FIELD = "_loaded";
+
+    /**
+     * 数量加1，快照不存在且未传入快照时返回-1
+     * KEYS[1]=数量hash KEYS[2]=快照hash ARGV[1]=字段 ARGV[2]=快照 ARGV[3]=过期秒数
+     */
+    private static final String ADD_SCRIPT =
+            "if redis.call('hexists', KEYS[2], ARGV[1]) == 0 then " +
+                    "    if ARGV[2] == '' then return -1 end " +
+                    "    redis.call('hset', KEYS[2], ARGV[1], ARGV[2]) " +
+                    "end " +
+                    "local number = redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+                    "redis.call('expire', KEYS[1], ARGV[3]) " +
+                    "redis.call('expire', KEYS[2], ARGV[3]) " +
+                    "return number";
+
+    /**
+     * 数量减1，减到0时删除该商品
+     * KEYS[1]=数量hash KEYS[2]=快照hash ARGV[1]=字段 ARGV[2]=过期秒数
+     */
+    private static final String SUB_SCRIPT =
+            "local number = tonumber(redis.call('hget', KEYS[1], ARGV[1]) or '0') " +
+                    "if number <= 1 then " +
+                    "    redis.call('hdel', KEYS[1], ARGV[1]) " +
+                    "    redis.call('hdel', KEYS[2], ARGV[1]) " +
+                    "    return 0 " +
+                    "end " +
+                    "number = redis.call('hincrby', KEYS[1], ARGV[1], -1) " +
+                    "redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "redis.call('expire', KEYS[2], ARGV[2]) " +
+                    "return number";
+
+    /**
+     * 写入从数据库加载的购物车，同时设置加载标记和过期时间；已经有加载标记时说明其他请求已加载过，不再写入
+     * KEYS[1]=数量hash KEYS[2]=快照hash ARGV[1]=过期秒数 之后每三个参数为 字段、快照、数量
+     */
+    private static final String LOAD_SCRIPT =
+            "if redis.call('hexists', KEYS[2], '" + LOADED_FIELD + "') == 1 then return 0 end " +
+                    "for i = 2, #ARGV, 3 do " +
+                    "    redis.call('hsetnx', KEYS[2], ARGV[i], ARGV[i + 1]) " +
+                    "    redis.call('hincrby', KEYS[1], ARGV[i], ARGV[i + 2]) " +
+                    "end " +
+                    "redis.call('hset', KEYS[2], '" + LOADED_FIELD + "', '1') " +
+                    "redis.call('expire', KEYS[1], ARGV[1]) " +
+                    "redis.call('expire', KEYS[2], ARGV[1]) " +
+                    "return 1";
+
+    private final DefaultRedisScript<Long> addScript = new DefaultRedisScript<>(ADD_SCRIPT, Long.class);
+
+    private final DefaultRedisScript<Long> subScript = new DefaultRedisScript<>(SUB_SCRIPT, Long.class);
+
+    private final DefaultRedisScript<Long> loadScript = new DefaultRedisScript<>(LOAD_SCRIPT, Long.class);
+
     @Autowired
     private ShoppingCartMapper shoppingCartMapper;
 
@@ -29,6 +107,12 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     @Autowired
     private SetmealMapper setmealMapper;
 
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private CartProperties cartProperties;
+
 
     /**
      * 添加购物车
@@ -37,48 +121,37 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
     @Override
     public void addShoppingCart(ShoppingCartDTO shoppingCartDTO) {
         log.info("添加购物车:{}",shoppingCartDTO);
-        //添加到购物车里的时候，首先需要判断是否存在于购物车内
-        //通过套餐/商品id(+口味id)+用户id来进行查找
-        //通过拦截器来获取userid
-        ShoppingCart shoppingCart = ShoppingCart.builder()
-                .userId(BaseContext.getCurrentId())
-                .dishId(shoppingCartDTO.getDishId())
-                .setmealId(shoppingCartDTO.getSetmealId())
-                .dishFlavor(shoppingCartDTO.getDishFlavor())
-                .build();
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        //如果存在是update，如果不存在是insert
-        if(list != null && list.size() > 0){
-            //因为这里通过这些条件来查找，只可能有两种情况，第一种为空，第二种为一条数据
-            //所以可以通过get(0)来获取查找到的那条信息
-            ShoppingCart cart = list.get(0);
-            cart.setNumber(cart.getNumber()+1);//update
-            shoppingCartMapper.updateNumberById(cart);
-        }else{
-            //不同用户需要有自己的购物车
-            //先要知道你查询的是套餐还是商品
-            Long dishId = shoppingCartDTO.getDishId();
-
-            //判断本次添加到购物车的是商品还是套餐
-            if(dishId != null){
+        Long userId = BaseContext.getCurrentId();
+        ensureLoaded(userId);
+
+        String field = fieldOf(shoppingCartDTO.getDishId(), shoppingCartDTO.getSetmealId(), shoppingCartDTO.getDishFlavor());
+        //购物车中已经存在时只需要数量加1，不需要查询商品信息
+        Long number = add(userId, field, "");
+        if (number != null && number < 0) {
+            //第一次添加，查询商品/套餐信息作为快照
+            ShoppingCart shoppingCart = ShoppingCart.builder()
+                    .userId(userId)
+                    .dishId(shoppingCartDTO.getDishId())
+                    .setmealId(shoppingCartDTO.getSetmealId())
+                    .dishFlavor(shoppingCartDTO.getDishFlavor())
+                    .createTime(LocalDateTime.now())
+                    .build();
+            if (shoppingCartDTO.getDishId() != null) {
                 //本次添加到购物车的是商品
-                Dish dish = dishMapper.getById(dishId);
+                Dish dish = dishMapper.getById(shoppingCartDTO.getDishId());
                 shoppingCart.setName(dish.getName());
                 shoppingCart.setImage(dish.getImage());
                 shoppingCart.setAmount(dish.getPrice());
-            }else{
+            } else {
                 //本次添加到购物车的是套餐
                 Setmeal setmeal = setmealMapper.getById(shoppingCartDTO.getSetmealId());
                 shoppingCart.setName(setmeal.getName());
                 shoppingCart.setImage(setmeal.getImage());
                 shoppingCart.setAmount(setmeal.getPrice());
             }
-
-            shoppingCart.setNumber(1);
-            shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartMapper.insert(shoppingCart);
+            add(userId, field, JSON.toJSONString(shoppingCart));
         }
-
+        markDirty(userId);
     }
 
     /**
@@ -87,12 +160,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     @Override
     public List<ShoppingCart> showShoppingCart() {
-        Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = ShoppingCart.builder()
-                .userId(userId)
-                .build();
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        return list;
+        return getCart(BaseContext.getCurrentId());
     }
 
 
@@ -101,11 +169,7 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     @Override
     public void cleanShoppingCart() {
-        Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = ShoppingCart.builder()
-                .userId(userId)
-                .build();
-        shoppingCartMapper.deleteShoppingCart(shoppingCart);
+        cleanCart(BaseContext.getCurrentId());
     }
 
     /**
@@ -114,26 +178,175 @@ public class ShoppingCartServiceImpl implements ShoppingCartService {
      */
     @Override
     public void deleteOnlyShoppingCart(ShoppingCartDTO shoppingCartDTO) {
-        //先判断该商品的数量，如果是1，则直接删除，否则减少数量
-        ShoppingCart shoppingCart = ShoppingCart.builder()
-                .userId(BaseContext.getCurrentId())
-                .dishId(shoppingCartDTO.getDishId())
-                .setmealId(shoppingCartDTO.getSetmealId())
-                .dishFlavor(shoppingCartDTO.getDishFlavor())
-                .build();
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
-        //这里找到的应该是一个商品，所以直接get(0)
-        ShoppingCart deleteShoppingCart = list.get(0);
-        if(deleteShoppingCart.getNumber() == 1){
-            //如果数量为1，则直接删除
-            shoppingCartMapper.deleteShoppingCart(deleteShoppingCart);
-        }else{
-            //如果数量不为1，则减少数量
-            deleteShoppingCart.setNumber(deleteShoppingCart.getNumber()-1);
-            shoppingCartMapper.updateNumberById(deleteShoppingCart);
+        Long userId = BaseContext.getCurrentId();
+        ensureLoaded(userId);
+        //数量为1时直接删除，否则减少数量，在Lua脚本中原子完成
+        String field = fieldOf(shoppingCartDTO.getDishId(), shoppingCartDTO.getSetmealId(), shoppingCartDTO.getDishFlavor());
+        stringRedisTemplate.execute(subScript, Arrays.asList(cartKey(userId), itemKey(userId)),
+                field, String.valueOf(expireSeconds()));
+        markDirty(userId);
+    }
+
+    /**
+     * 查询指定用户的购物车
+     * @param userId
+     * @return
+     */
+    @Override
+    public List<ShoppingCart> getCart(Long userId) {
+        ensureLoaded(userId);
+        HashOperations<String, String, String> hashOps = stringRedisTemplate.opsForHash();
+        Map<String, String> numbers = hashOps.entries(cartKey(userId));
+        Map<String, String> items = hashOps.entries(itemKey(userId));
+
+        List<ShoppingCart> list = new ArrayList<>();
+        for (Map.Entry<String, String> entry : numbers.entrySet()) {
+            String item = items.get(entry.getKey());
+            if (item == null) {
+                continue;
+            }
+            ShoppingCart shoppingCart = JSON.parseObject(item, ShoppingCart.class);
+            shoppingCart.setUserId(userId);
+            shoppingCart.setNumber(Integer.valueOf(entry.getValue()));
+            list.add(shoppingCart);
+        }
+        //按加入购物车的时间排序，与原来数据库查询的顺序一致
+        list.sort(Comparator.comparing(ShoppingCart::getCreateTime, Comparator.nullsLast(Comparator.naturalOrder())));
+        return list;
+    }
+
+    /**
+     * 清空指定用户的购物车
+     * 保留加载标记，避免下次访问时又从数据库加载
+     * @param userId
+     */
+    @Override
+    public void cleanCart(Long userId) {
+        stringRedisTemplate.delete(Arrays.asList(cartKey(userId), itemKey(userId)));
+        stringRedisTemplate.opsForHash().put(itemKey(userId), LOADED_FIELD, "1");
+        stringRedisTemplate.expire(itemKey(userId), expireSeconds(), TimeUnit.SECONDS);
+        markDirty(userId);
+    }
+
+    /**
+     * 向指定用户的购物车批量添加商品
+     * @param userId
+     * @param shoppingCartList
+     */
+    @Override
+    public void addItems(Long userId, List<ShoppingCart> shoppingCartList) {
+        ensureLoaded(userId);
+        HashOperations<String, String, String> hashOps = stringRedisTemplate.opsForHash();
+        for (ShoppingCart cart : shoppingCartList) {
+            String field = fieldOf(cart.getDishId(), cart.getSetmealId(), cart.getDishFlavor());
+            cart.setId(null);
+            cart.setUserId(userId);
+            Integer number = cart.getNumber() == null ? 1 : cart.getNumber();
+            cart.setNumber(null);
+            hashOps.putIfAbsent(itemKey(userId), field, JSON.toJSONString(cart));
+            hashOps.increment(cartKey(userId), field, number);
         }
+        stringRedisTemplate.expire(cartKey(userId), expireSeconds(), TimeUnit.SECONDS);
+        stringRedisTemplate.expire(itemKey(userId), expireSeconds(), TimeUnit.SECONDS);
+        markDirty(userId);
+    }
 
+    /**
+     * 取出一批待回写的用户id，取出后其他节点不会重复处理
+     * @param count
+     * @return
+     */
+    @Override
+    public List<Long> popDirtyUserIds(int count) {
+        List<String> userIds = stringRedisTemplate.opsForSet().pop(CART_DIRTY_KEY, count);
+        if (userIds == null) {
+            return new ArrayList<>();
+        }
+        return userIds.stream().map(Long::valueOf).collect(Collectors.toList());
     }
 
+    /**
+     * 将指定用户的购物车写回数据库，先删除再整体插入
+     * @param userId
+     */
+    @Override
+    @Transactional
+    public void flushCart(Long userId) {
+        List<ShoppingCart> list = getCart(userId);
+        shoppingCartMapper.deleteShoppingCart(ShoppingCart.builder().userId(userId).build());
+        if (!list.isEmpty()) {
+            shoppingCartMapper.insertBatch(list);
+        }
+    }
+
+    /**
+     * 标记用户购物车需要回写数据库，未开启回写时不做任何事
+     * @param userId
+     */
+    @Override
+    public void markDirty(Long userId) {
+        if (cartProperties.isWriteBehind()) {
+            stringRedisTemplate.opsForSet().add(CART_DIRTY_KEY, String.valueOf(userId));
+        }
+    }
+
+    /**
+     * Redis中没有该用户的购物车时（首次访问或已过期），从数据库加载
+     * 先查询数据库，再用脚本一次写入商品、加载标记和过期时间，查询失败时不留下标记，下次访问重新加载；
+     * 并发请求各自查询，只有第一个写入生效
+     * 未开启回写时，数据库中只可能是旧数据，加载后删除
+     * @param userId
+     */
+    private void ensureLoaded(Long userId) {
+        if (stringRedisTemplate.opsForHash().hasKey(itemKey(userId), LOADED_FIELD)) {
+            return;
+        }
+        List<ShoppingCart> list = shoppingCartMapper.list(ShoppingCart.builder().userId(userId).build());
+
+        List<String> args = new ArrayList<>();
+        args.add(String.valueOf(expireSeconds()));
+        for (ShoppingCart cart : list) {
+            String field = fieldOf(cart.getDishId(), cart.getSetmealId(), cart.getDishFlavor());
+            Integer number = cart.getNumber() == null ? 1 : cart.getNumber();
+            cart.setId(null);
+            cart.setUserId(userId);
+            cart.setNumber(null);
+            args.add(field);
+            args.add(JSON.toJSONString(cart));
+            args.add(String.valueOf(number));
+        }
+        Long loaded = stringRedisTemplate.execute(loadScript, Arrays.asList(cartKey(userId), itemKey(userId)),
+                args.toArray());
+        if (Long.valueOf(1).equals(loaded) && !list.isEmpty()) {
+            log.info("从数据库加载用户{}的购物车，共{}条", userId, list.size());
+            if (!cartProperties.isWriteBehind()) {
+                shoppingCartMapper.deleteShoppingCart(ShoppingCart.builder().userId(userId).build());
+            }
+        }
+    }
+
+    private Long add(Long userId, String field, String snapshot) {
+        return stringRedisTemplate.execute(addScript, Arrays.asList(cartKey(userId), itemKey(userId)),
+                field, snapshot, String.valueOf(expireSeconds()));
+    }
+
+    private String fieldOf(Long dishId, Long setmealId, String dishFlavor) {
+        if (dishId != null) {
+            return "d" + dishId + ":" + (dishFlavor == null ? "" : dishFlavor);
+        }
+        return "s" + setmealId;
+    }
+
+    private String cartKey(Long userId) {
+        return CART_KEY_PREFIX + userId;
+    }
+
+    private String itemKey(Long userId) {
+        return CART_ITEM_KEY_PREFIX + userId;
+    }
+
+    private long expireSeconds() {
+        return TimeUnit.DAYS.toSeconds(cartProperties.getExpireDays());
+    }
 
 }
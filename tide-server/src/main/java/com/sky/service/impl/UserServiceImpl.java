@@ -7,6 +7,8 @@ import com.sky.entity.User;
 import com.sky.exception.LoginFailedException;
 import com.sky.mapper.UserMapper;
 import com.sky.properties.WeChatProperties;
+import com.sky.service.DailyStatsService;
+import com.sky.service.LiveMetricsService;
 import com.sky.service.UserService;
 import com.sky.utils.HttpClientUtil;
 import lombok.extern.slf4j.Slf4j;
@@ -31,6 +33,12 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private UserMapper userMapper;
 
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    @Autowired
+    private LiveMetricsService liveMetricsService;
+
     /**
      * 微信登录
      * @param userLoginDTO
@@ -57,6 +65,8 @@ public class UserServiceImpl implements UserService {
                     .createTime(LocalDateTime.now())
                     .build();
             userMapper.insert(user);
+            dailyStatsService.userRegistered(user);
+            liveMetricsService.userRegistered(user);
         }
 
         //返回这个user对象
@@ -0,0 +1,239 @@
+package com.sky.service.impl;
+
+import com.sky.constant.CacheConstant;
+import com.sky.constant.StatusConstant;
+import com.sky.entity.Orders;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.service.WorkspaceCounterService;
+import com.sky.vo.DishOverViewVO;
+import com.sky.vo.OrderOverViewVO;
+import com.sky.vo.OrderStatisticsVO;
+import com.sky.vo.SetmealOverViewVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 工作台计数器
+ * 商品、套餐、订单按状态计数保存在Redis的hash中，数据变化时增减对应状态的计数，
+ * 工作台总览只需要读取一次hash，不再随着商品和订单数量增长而变慢。
+ * 计数写入放在事务提交之后，失败或者漏记的部分由定时任务按数据库重新统计修正
+ */
+@Service
+@Slf4j
+public class WorkspaceCounterServiceImpl implements WorkspaceCounterService {
+
+    private static final String DISH = "dish";
+    private static final String SETMEAL = "setmeal";
+    private static final String ORDER = "order";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private DishMapper dishMapper;
+
+    @Autowired
+    private SetmealMapper setmealMapper;
+
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Override
+    public void dishChanged(Integer oldStatus, Integer newStatus) {
+        move(DISH, oldStatus, newStatus, 1);
+    }
+
+    @Override
+    public void setmealChanged(Integer oldStatus, Integer newStatus) {
+        move(SETMEAL, oldStatus, newStatus, 1);
+    }
+
+    @Override
+    public void orderChanged(Integer oldStatus, Integer newStatus) {
+        move(ORDER, oldStatus, newStatus, 1);
+    }
+
+    /**
+     * 批量订单状态变化
+     * @param oldStatus
+     * @param newStatus
+     * @param count
+     */
+    @Override
+    public void orderChanged(Integer oldStatus, Integer newStatus, int count) {
+        move(ORDER, oldStatus, newStatus, count);
+    }
+
+    /**
+     * 商品总览
+     * @return
+     */
+    @Override
+    public DishOverViewVO getDishOverview() {
+        Map<String, Long> counters = loadCounters();
+        return new DishOverViewVO(count(counters, DISH, StatusConstant.ENABLE), count(counters, DISH, StatusConstant.DISABLE));
+    }
+
+    /**
+     * 套餐总览
+     * @return
+     */
+    @Override
+    public SetmealOverViewVO getSetmealOverview() {
+        Map<String, Long> counters = loadCounters();
+        return new SetmealOverViewVO(count(counters, SETMEAL, StatusConstant.ENABLE), count(counters, SETMEAL, StatusConstant.DISABLE));
+    }
+
+    /**
+     * 订单总览，统计口径与OrderMapper.getOverview一致
+     * @return
+     */
+    @Override
+    public OrderOverViewVO getOrderOverview() {
+        Map<String, Long> counters = loadCounters();
+        long all = counters.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(ORDER + ":"))
+                .mapToLong(entry -> Math.max(entry.getValue(), 0))
+                .sum();
+        return OrderOverViewVO.builder()
+                .allOrders((int) all)
+                .cancelledOrders(count(counters, ORDER, Orders.CANCELLED))
+                .completedOrders(count(counters, ORDER, Orders.COMPLETED))
+                .deliveredOrders(count(counters, ORDER, Orders.CONFIRMED))
+                .waitingOrders(count(counters, ORDER, Orders.PENDING_PAYMENT))
+                .build();
+    }
+
+    /**
+     * 待处理订单数量
+     * @return
+     */
+    @Override
+    public OrderStatisticsVO getOrderStatistics() {
+        Map<String, Long> counters = loadCounters();
+        OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
+        orderStatisticsVO.setToBeConfirmed(count(counters, ORDER, Orders.TO_BE_CONFIRMED));
+        orderStatisticsVO.setConfirmed(count(counters, ORDER, Orders.CONFIRMED));
+        orderStatisticsVO.setDeliveryInProgress(count(counters, ORDER, Orders.DELIVERY_IN_PROGRESS));
+        return orderStatisticsVO;
+    }
+
+    /**
+     * 重新统计
+     * 删除旧的hash后整体写入，数据库中已经不存在的状态也会被清掉
+     */
+    @Override
+    public void reconcile() {
+        Map<String, String> counters = new HashMap<>();
+        putCounts(counters, DISH, dishMapper.countGroupByStatus());
+        putCounts(counters, SETMEAL, setmealMapper.countGroupByStatus());
+        putCounts(counters, ORDER, orderMapper.countGroupByStatus());
+
+        stringRedisTemplate.execute(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.multi();
+                operations.delete(CacheConstant.WORKSPACE_COUNTER_KEY);
+                if (!counters.isEmpty()) {
+                    operations.opsForHash().putAll(CacheConstant.WORKSPACE_COUNTER_KEY, counters);
+                }
+                return operations.exec();
+            }
+        });
+        log.info("工作台计数重新统计完成：{}", counters);
+    }
+
+    /**
+     * 从旧状态的计数中减去count，新状态的计数加上count
+     * 状态为null的一侧不处理，状态相同时不处理
+     * @param type
+     * @param oldStatus
+     * @param newStatus
+     * @param count
+     */
+    private void move(String type, Integer oldStatus, Integer newStatus, int count) {
+        if (Objects.equals(oldStatus, newStatus) || count <= 0) {
+            return;
+        }
+        afterCommit(() -> {
+            if (oldStatus != null) {
+                stringRedisTemplate.opsForHash().increment(CacheConstant.WORKSPACE_COUNTER_KEY, field(type, oldStatus), -count);
+            }
+            if (newStatus != null) {
+                stringRedisTemplate.opsForHash().increment(CacheConstant.WORKSPACE_COUNTER_KEY, field(type, newStatus), count);
+            }
+        });
+    }
+
+    /**
+     * 读取全部计数，计数还不存在时先根据数据库统计一次
+     * @return
+     */
+    private Map<String, Long> loadCounters() {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(CacheConstant.WORKSPACE_COUNTER_KEY);
+        if (entries.isEmpty()) {
+            reconcile();
+            entries = stringRedisTemplate.opsForHash().entries(CacheConstant.WORKSPACE_COUNTER_KEY);
+        }
+        Map<String, Long> counters = new HashMap<>();
+        entries.forEach((field, value) -> counters.put((String) field, Long.parseLong((String) value)));
+        return counters;
+    }
+
+    private int count(Map<String, Long> counters, String type, Integer status) {
+        return (int) Math.max(counters.getOrDefault(field(type, status), 0L), 0);
+    }
+
+    private void putCounts(Map<String, String> counters, String type, List<Map<String, Object>> rows) {
+        for (Map<String, Object> row : rows) {
+            Number status = (Number) row.get("status");
+            Number count = (Number) row.get("count");
+            if (status != null && count != null) {
+                counters.put(field(type, status.intValue()), String.valueOf(count.longValue()));
+            }
+        }
+    }
+
+    private String field(String type, Integer status) {
+        return type + ":" + status;
+    }
+
+    /**
+     * 事务提交后执行，没有事务时立即执行
+     * @param action
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    runQuietly(action);
+                }
+            });
+        } else {
+            runQuietly(action);
+        }
+    }
+
+    private void runQuietly(Runnable action) {
+        try {
+            action.run();
+        } catch (Exception e) {
+            log.error("更新工作台计数失败，等待定时重新统计修正", e);
+        }
+    }
+}
@@ -1,12 +1,9 @@
 package com.sky.service.impl;
 
-import com.sky.entity.Dish;
 import com.sky.entity.Orders;
-import com.sky.entity.Setmeal;
-import com.sky.mapper.DishMapper;
 import com.sky.mapper.OrderMapper;
-import com.sky.mapper.SetmealMapper;
 import com.sky.mapper.UserMapper;
+import com.sky.service.WorkspaceCounterService;
 import com.sky.service.WorkspaceService;
 import com.sky.vo.BusinessDataVO;
 import com.sky.vo.DishOverViewVO;
@@ -34,10 +31,7 @@ public class WorkspaceServiceImpl implements WorkspaceService {
     private UserMapper userMapper;
 
     @Autowired
-    private SetmealMapper setmealMapper;
-
-    @Autowired
-    private DishMapper dishMapper;
+    private WorkspaceCounterService workspaceCounterService;
 
     /**
      * 获取今日运营数据
@@ -123,16 +117,8 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      */
     @Override
     public SetmealOverViewVO getOverviewSetmeals() {
-        // 查询起售的套餐
-        List<Setmeal> onsaleSetmeals = setmealMapper.list(Setmeal.builder().status(1).build());
-        // 查询停售的套餐
-        List<Setmeal> offsaleSetmeals = setmealMapper.list(Setmeal.builder().status(0).build());
-
-        // 直接使用列表大小
-        int sold = onsaleSetmeals.size();
-        int discontinued = offsaleSetmeals.size();
-
-        return new SetmealOverViewVO(sold, discontinued);
+        // 直接读取计数，不再查询全部套餐
+        return workspaceCounterService.getSetmealOverview();
     }
 
     /**
@@ -141,13 +127,7 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      */
     @Override
     public DishOverViewVO getOverviewDishes() {
-        //查询起售的商品
-        List<Dish> onsaleDishes = dishMapper.list(Dish.builder().status(1).build());
-        //查询停售的商品
-        List<Dish> offsaleDishes = dishMapper.list(Dish.builder().status(0).build());
-        int sold = onsaleDishes.size();
-        int discontinued = offsaleDishes.size();
-        return new DishOverViewVO(sold, discontinued);
+        return workspaceCounterService.getDishOverview();
     }
 
     /**
@@ -156,8 +136,7 @@ public class WorkspaceServiceImpl implements WorkspaceService {
      */
     @Override
     public OrderOverViewVO getOverviewOrders() {
-        OrderOverViewVO orderOverViewVO = orderMapper.getOverview();
-        return orderOverViewVO;
+        return workspaceCounterService.getOrderOverview();
     }
 
 
@@ -0,0 +1,42 @@
+package com.sky.task;
+
+import com.sky.annotation.ClusterTask;
+import com.sky.properties.ReportProperties;
+import com.sky.service.DailyStatsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+/**
+ * 定时任务类
+ * 每晚根据订单、用户表重算最近几天的统计汇总
+ */
+@Component
+@Slf4j
+public class DailyStatsReconcileTask {
+
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    @Autowired
+    private ReportProperties reportProperties;
+
+    /**
+     * 凌晨一点会自动完成派送中的订单，所以在这之后执行
+     */
+    @Scheduled(cron = "0 30 2 * * ?")
+    @ClusterTask
+    public void reconcile() {
+        LocalDate end = LocalDate.now().minusDays(1);
+        LocalDate begin = end.minusDays(Math.max(reportProperties.getReconcileDays(), 1) - 1);
+        log.info("重算每日统计汇总：{}至{}", begin, end);
+        try {
+            dailyStatsService.reconcile(begin, end);
+        } catch (Exception e) {
+            log.error("重算每日统计汇总失败：{}至{}", begin, end, e);
+        }
+    }
+}
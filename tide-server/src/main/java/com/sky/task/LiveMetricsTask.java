@@ -0,0 +1,43 @@
+package com.sky.task;
+
+import com.sky.service.LiveMetricsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 定时任务类
+ * 推送工作台实时数据
+ */
+@Component
+@Slf4j
+public class LiveMetricsTask {
+
+    @Autowired
+    private LiveMetricsService liveMetricsService;
+
+    /**
+     * 每秒推送一次合并后的增量，下单高峰时不会逐条推送
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void flush() {
+        try {
+            liveMetricsService.flush();
+        } catch (Exception e) {
+            log.warn("推送工作台实时数据失败", e);
+        }
+    }
+
+    /**
+     * 每天零点清零当天数据，之后每5分钟根据数据库重新加载一次修正偏差
+     */
+    @Scheduled(cron = "0 0/5 * * * ?")
+    public void reload() {
+        try {
+            liveMetricsService.reload();
+        } catch (Exception e) {
+            log.warn("重新加载工作台实时数据失败", e);
+        }
+    }
+}
@@ -1,15 +1,26 @@
 package com.sky.task;
 
+import com.sky.annotation.ClusterTask;
 import com.sky.entity.Orders;
 import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderTimeoutProperties;
+import com.sky.service.DailyStatsService;
+import com.sky.service.LiveMetricsService;
+import com.sky.service.OrderTimeoutService;
+import com.sky.service.WorkspaceCounterService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.annotation.Order;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * 定时任务类
@@ -18,44 +29,134 @@ import java.util.List;
 @Slf4j
 public class OrderTask {
 
+    //每批处理的订单数量
+    private static final int BATCH_SIZE = 500;
+
     @Autowired
     private OrderMapper orderMapper;
 
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    @Autowired
+    private WorkspaceCounterService workspaceCounterService;
+
+    @Autowired
+    private LiveMetricsService liveMetricsService;
+
+    @Autowired
+    private OrderTimeoutService orderTimeoutService;
+
+    @Autowired
+    private OrderTimeoutProperties orderTimeoutProperties;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 处理延时队列中到期的订单，订单在下单后超过sky.order-timeout.payment-timeout-minutes仍未支付时被取消
+     * 订单通过ZREM认领，多个节点同时处理也不会重复取消，所以不加集群锁
+     */
+    @Scheduled(fixedDelayString = "${sky.order-timeout.poll-interval-ms:1000}")
+    public void processTimeoutQueue() {
+        int cancelled;
+        do {
+            cancelled = orderTimeoutService.processExpired();
+            if (cancelled > 0) {
+                log.info("取消超时订单{}个", cancelled);
+            }
+        } while (cancelled >= orderTimeoutProperties.getBatchSize());
+    }
+
     /**
      * 处理超时订单
+     * 超时订单由延时队列取消，这里只兜底处理写入队列失败或者Redis数据丢失的订单
      */
-    @Scheduled(cron = "0 0/3 * * * ? ") //每3分钟触发一次
+    @Scheduled(cron = "0 0/30 * * * ? ") //每30分钟触发一次
+    @ClusterTask
 //    @Scheduled(cron = "0/5 * * * * ?")
     public void processTimeoutOrder() {
         log.info("处理超时订单：{}", LocalDateTime.now());
 
-        //select * from order where status = 1 and order_time < LocalDateTime.now() - 15min
-        List<Orders> orderList = orderMapper.getByStatusAndOrderTimeLT(Orders.PENDING_PAYMENT, LocalDateTime.now().minusMinutes(15));
-
-        if(orderList!= null&& orderList.size()>0){
-            for (Orders orders : orderList) {
-                //更新订单状态为已取消
-                orders.setStatus(Orders.CANCELLED);
-                orders.setCancelReason("订单超时，自动取消");
-                orders.setCancelTime(LocalDateTime.now());
-                orderMapper.update(orders);
-            }
+        Orders cancel = Orders.builder()
+                .status(Orders.CANCELLED)
+                .cancelReason("订单超时，自动取消")
+                .cancelTime(LocalDateTime.now())
+                .build();
+        int total = processInBatches(Orders.PENDING_PAYMENT,
+                LocalDateTime.now().minusMinutes(orderTimeoutProperties.getPaymentTimeoutMinutes()), cancel, updated -> {
+                    workspaceCounterService.orderChanged(Orders.PENDING_PAYMENT, Orders.CANCELLED, updated.size());
+                    liveMetricsService.orderStatusChanged(updated, Orders.PENDING_PAYMENT, Orders.CANCELLED);
+                });
+        if (total > 0) {
+            log.info("兜底取消超时订单{}个", total);
         }
     }
 
 
     @Scheduled(cron = "0 0 1 * * ?")//每天凌晨一点触发一次
+    @ClusterTask
 //    @Scheduled(cron = "0/5 * * * * ?")
     public void processCompletedOrder(){
         log.info("处理一直处于派送中派送订单：{}", LocalDateTime.now());
 
-        List<Orders> orderList = orderMapper.getByStatusAndOrderTimeLT(Orders.DELIVERY_IN_PROGRESS, LocalDateTime.now().minusHours(1));
+        Orders complete = Orders.builder()
+                .status(Orders.COMPLETED)
+                .build();
+        int total = processInBatches(Orders.DELIVERY_IN_PROGRESS, LocalDateTime.now().minusHours(1), complete, updated -> {
+            dailyStatsService.ordersCompleted(updated);
+            workspaceCounterService.orderChanged(Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED, updated.size());
+            liveMetricsService.orderStatusChanged(updated, Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED);
+        });
+        if (total > 0) {
+            log.info("自动完成派送中订单{}个", total);
+        }
+    }
+
+    /**
+     * 分批修改订单状态
+     * 按(下单时间, id)翻页，每批只查询BATCH_SIZE个订单，再用一条update修改整批订单，
+     * 每批在一个事务中先锁住仍处于原状态的订单，再只更新这些订单，
+     * 查询之后已经被用户或商家修改过的订单既不会被覆盖，也不会被再次计入统计
+     * @param status 原状态
+     * @param orderTime 只处理下单时间早于orderTime的订单
+     * @param target 需要更新的状态和字段
+     * @param afterUpdate 每批更新完成后的回调，参数为实际被更新的订单
+     * @return 更新的订单总数
+     */
+    private int processInBatches(Integer status, LocalDateTime orderTime, Orders target, Consumer<List<Orders>> afterUpdate) {
+        int total = 0;
+        LocalDateTime lastOrderTime = null;
+        Long lastId = null;
+        while (true) {
+            List<Orders> batch = orderMapper.listByStatusAndOrderTimeLT(status, orderTime, lastOrderTime, lastId, BATCH_SIZE);
+            if (batch.isEmpty()) {
+                break;
+            }
+            Orders last = batch.get(batch.size() - 1);
+            lastOrderTime = last.getOrderTime();
+            lastId = last.getId();
 
-        if(orderList!= null&& orderList.size()>0){
-            for (Orders orders : orderList) {
-                orders.setStatus(Orders.COMPLETED);
-                orderMapper.update(orders);
+            List<Long> ids = batch.stream().map(Orders::getId).collect(Collectors.toList());
+            Integer count = transactionTemplate.execute(transactionStatus -> {
+                //加锁后这些订单的状态不会再被其他请求修改，update影响的正好是这些订单
+                Set<Long> lockedIds = new HashSet<>(orderMapper.lockIdsByIdsAndStatus(ids, status));
+                if (lockedIds.isEmpty()) {
+                    return 0;
+                }
+                orderMapper.updateStatusByIds(new ArrayList<>(lockedIds), status, target);
+                List<Orders> updated = batch.stream()
+                        .filter(orders -> lockedIds.contains(orders.getId()))
+                        .collect(Collectors.toList());
+                //统计回调都在事务提交后执行
+                afterUpdate.accept(updated);
+                return updated.size();
+            });
+            total += count != null ? count : 0;
+            if (batch.size() < BATCH_SIZE) {
+                break;
             }
         }
+        return total;
     }
 }
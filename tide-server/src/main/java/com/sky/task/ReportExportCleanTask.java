@@ -0,0 +1,24 @@
+package com.sky.task;
+
+import com.sky.service.ReportExportService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 定时任务类
+ * 清理过期的报表导出文件
+ */
+@Component
+@Slf4j
+public class ReportExportCleanTask {
+
+    @Autowired
+    private ReportExportService reportExportService;
+
+    @Scheduled(fixedDelay = 5 * 60 * 1000)
+    public void cleanExpiredExports() {
+        reportExportService.cleanExpired();
+    }
+}
@@ -0,0 +1,53 @@
+package com.sky.task;
+
+import com.sky.properties.CartProperties;
+import com.sky.service.ShoppingCartService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 定时任务类
+ * 将Redis中修改过的购物车写回数据库
+ */
+@Component
+@Slf4j
+public class ShoppingCartFlushTask {
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private CartProperties cartProperties;
+
+    /**
+     * 回写购物车，未开启回写时直接返回
+     */
+    @Scheduled(fixedDelayString = "${sky.cart.flush-interval-ms:5000}")
+    public void flushDirtyCarts() {
+        if (!cartProperties.isWriteBehind()) {
+            return;
+        }
+
+        List<Long> userIds = shoppingCartService.popDirtyUserIds(cartProperties.getFlushBatchSize());
+        if (userIds.isEmpty()) {
+            return;
+        }
+
+        int failed = 0;
+        for (Long userId : userIds) {
+            try {
+                shoppingCartService.flushCart(userId);
+            } catch (Exception e) {
+                //写回失败，重新标记，下次再试
+                failed++;
+                log.error("购物车写回数据库失败：{}", userId, e);
+                shoppingCartService.markDirty(userId);
+            }
+        }
+        log.info("购物车写回数据库完成，共{}个用户，失败{}个", userIds.size(), failed);
+    }
+}
@@ -0,0 +1,30 @@
+package com.sky.task;
+
+import com.sky.annotation.ClusterTask;
+import com.sky.service.WorkspaceCounterService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 定时任务类
+ * 定期根据数据库重新统计工作台计数，修正增量计数的偏差
+ */
+@Component
+@Slf4j
+public class WorkspaceCounterReconcileTask {
+
+    @Autowired
+    private WorkspaceCounterService workspaceCounterService;
+
+    @Scheduled(fixedDelayString = "${sky.workspace.counter-reconcile-ms:600000}")
+    @ClusterTask
+    public void reconcile() {
+        try {
+            workspaceCounterService.reconcile();
+        } catch (Exception e) {
+            log.error("工作台计数重新统计失败", e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.sky.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * WebSocket跨节点广播
+ * 多实例部署时，管理端浏览器可能连接在任意一个节点上
+ * 消息发布到Redis频道，每个节点收到后推送给本节点上的会话
+ */
+@Component
+@Slf4j
+public class WebSocketBroadcastBus implements MessageListener {
+
+    //WebSocket广播频道
+    public static final String BROADCAST_CHANNEL = "sky:ws:broadcast";
+
+    @Autowired
+    private WebSocketServer webSocketServer;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(BROADCAST_CHANNEL));
+    }
+
+    /**
+     * 向所有节点上的客户端广播消息
+     * Redis不可用时退化为只推送本节点的客户端
+     * @param message
+     */
+    public void broadcast(String message) {
+        try {
+            stringRedisTemplate.convertAndSend(BROADCAST_CHANNEL, message);
+        } catch (Exception e) {
+            log.error("发布WebSocket广播消息失败，仅推送本节点客户端", e);
+            webSocketServer.sendToAllClient(message);
+        }
+    }
+
+    /**
+     * 收到广播消息（包括本节点发布的），推送给本节点的客户端
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        webSocketServer.sendToAllClient(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+}
@@ -1,33 +1,66 @@
 package com.sky.websocket;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.websocket.CloseReason;
 import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.OnOpen;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Collection;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * WebSocket服务
+ * 群发时只把消息放入每个会话的发送队列，由发送线程通过异步方式写出
+ * 调用方线程不再等待任何一个客户端，慢客户端的队列写满后直接断开
  */
 @Component
 @ServerEndpoint("/ws/{sid}")
+@Slf4j
 public class WebSocketServer {
 
+    //每个会话最多积压的消息数量
+    private static final int QUEUE_CAPACITY = 64;
+
+    //发送线程数量，会话按sid固定分配到其中一个线程
+    private static final int SHARD_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+
     //存放会话对象
-    private static Map<String, Session> sessionMap = new HashMap();
+    private static final Map<String, SessionChannel> sessionMap = new ConcurrentHashMap<>();
+
+    private static final ExecutorService[] senders = new ExecutorService[SHARD_COUNT];
+
+    static {
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            senders[i] = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("ws-sender-" + i + "-"));
+        }
+    }
 
     /**
      * 连接建立成功调用的方法
      */
     @OnOpen
     public void onOpen(Session session, @PathParam("sid") String sid) {
-        System.out.println("客户端：" + sid + "建立连接");
-        sessionMap.put(sid, session);
+        log.info("客户端：{}建立连接", sid);
+        SessionChannel old = sessionMap.put(sid, new SessionChannel(sid, session));
+        //同一个sid重复连接时，关闭旧的连接
+        if (old != null && old.session != session) {
+            old.close(CloseReason.CloseCodes.NORMAL_CLOSURE, "重复连接");
+        }
     }
 
     /**
@@ -37,7 +70,7 @@ public class WebSocketServer {
      */
     @OnMessage
     public void onMessage(String message, @PathParam("sid") String sid) {
-        System.out.println("收到来自客户端：" + sid + "的信息:" + message);
+        log.info("收到来自客户端：{}的信息:{}", sid, message);
     }
 
     /**
@@ -46,24 +79,132 @@ public class WebSocketServer {
      * @param sid
      */
     @OnClose
-    public void onClose(@PathParam("sid") String sid) {
-        System.out.println("连接断开:" + sid);
-        sessionMap.remove(sid);
+    public void onClose(Session session, @PathParam("sid") String sid) {
+        log.info("连接断开:{}", sid);
+        sessionMap.computeIfPresent(sid, (k, channel) -> channel.session == session ? null : channel);
+    }
+
+    /**
+     * 连接异常调用的方法
+     * @param session
+     * @param sid
+     * @param throwable
+     */
+    @OnError
+    public void onError(Session session, @PathParam("sid") String sid, Throwable throwable) {
+        log.warn("连接异常:{}，{}", sid, throwable.getMessage());
+        sessionMap.computeIfPresent(sid, (k, channel) -> channel.session == session ? null : channel);
     }
 
     /**
      * 群发
+     * 只负责入队，不会阻塞调用方
      *
      * @param message
      */
     public void sendToAllClient(String message) {
-        Collection<Session> sessions = sessionMap.values();
-        for (Session session : sessions) {
+        for (SessionChannel channel : sessionMap.values()) {
+            channel.offer(message);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (ExecutorService sender : senders) {
+            sender.shutdownNow();
+        }
+    }
+
+    /**
+     * 单个会话的发送通道
+     * 同一时间只有一条消息在异步发送，发送完成后再取下一条，保证消息顺序
+     */
+    private static class SessionChannel {
+
+        private final String sid;
+        private final Session session;
+        private final Queue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final AtomicBoolean sending = new AtomicBoolean(false);
+        private final ExecutorService sender;
+
+        SessionChannel(String sid, Session session) {
+            this.sid = sid;
+            this.session = session;
+            this.sender = senders[Math.floorMod(sid.hashCode(), SHARD_COUNT)];
+        }
+
+        /**
+         * 消息入队，队列已满说明客户端处理不过来，断开该客户端
+         * @param message
+         */
+        void offer(String message) {
+            if (!session.isOpen()) {
+                sessionMap.remove(sid, this);
+                return;
+            }
+            if (!queue.offer(message)) {
+                log.warn("客户端：{}消息积压超过{}条，断开连接", sid, QUEUE_CAPACITY);
+                close(CloseReason.CloseCodes.TRY_AGAIN_LATER, "消息积压");
+                return;
+            }
+            trySchedule();
+        }
+
+        /**
+         * 当前没有发送中的消息时，提交到发送线程
+         */
+        private void trySchedule() {
+            if (!queue.isEmpty() && sending.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::sendNext);
+                } catch (Exception e) {
+                    sending.set(false);
+                    log.error("提交WebSocket发送任务失败：{}", sid, e);
+                }
+            }
+        }
+
+        private void sendNext() {
+            String message = queue.poll();
+            if (message == null || !session.isOpen()) {
+                sending.set(false);
+                //释放标记后可能又有新消息入队
+                if (session.isOpen()) {
+                    trySchedule();
+                }
+                return;
+            }
             try {
-                //服务器向客户端发送消息
-                session.getBasicRemote().sendText(message);
+                session.getAsyncRemote().sendText(message, this::onSent);
             } catch (Exception e) {
-                e.printStackTrace();
+                log.warn("客户端：{}发送消息失败，断开连接", sid, e);
+                sending.set(false);
+                close(CloseReason.CloseCodes.UNEXPECTED_CONDITION, "发送失败");
+            }
+        }
+
+        private void onSent(SendResult result) {
+            if (!result.isOK()) {
+                log.warn("客户端：{}发送消息失败，断开连接", sid, result.getException());
+                sending.set(false);
+                close(CloseReason.CloseCodes.UNEXPECTED_CONDITION, "发送失败");
+                return;
+            }
+            //继续发送下一条，回到发送线程执行，不占用容器的IO线程
+            try {
+                sender.execute(this::sendNext);
+            } catch (Exception e) {
+                sending.set(false);
+            }
+        }
+
+        void close(CloseReason.CloseCodes code, String reason) {
+            sessionMap.remove(sid, this);
+            queue.clear();
+            try {
+                session.close(new CloseReason(code, reason));
+            } catch (IOException e) {
+                log.warn("关闭客户端：{}连接失败", sid, e);
             }
         }
     }
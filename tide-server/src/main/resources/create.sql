@@ -188,6 +188,22 @@ CREATE TABLE `orders` (
 ALTER TABLE `orders`
 ADD COLUMN `version` int NOT NULL DEFAULT 0 COMMENT '乐观锁版本号';
 
+-- 订单号唯一索引，支付回调按订单号查询订单
+ALTER TABLE `orders`
+ADD UNIQUE KEY `idx_orders_number` (`number`);
+
+-- 按下单时间范围重算统计数据
+ALTER TABLE `orders`
+ADD KEY `idx_orders_order_time` (`order_time`);
+
+-- 定时任务按状态和下单时间查询超时、待完成的订单，管理端按状态游标分页
+ALTER TABLE `orders`
+ADD KEY `idx_orders_status_order_time` (`status`, `order_time`, `id`);
+
+-- 用户端历史订单游标分页
+ALTER TABLE `orders`
+ADD KEY `idx_orders_user_order_time` (`user_id`, `order_time`, `id`);
+
 DROP TABLE IF EXISTS `setmeal`;
 CREATE TABLE `setmeal` (
   `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键',
@@ -228,7 +244,8 @@ CREATE TABLE `shopping_cart` (
   `number` int NOT NULL DEFAULT '1' COMMENT '数量',
   `amount` decimal(10,2) NOT NULL COMMENT '金额',
   `create_time` datetime DEFAULT NULL COMMENT '创建时间',
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `idx_shopping_cart_user_id` (`user_id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=9 DEFAULT CHARSET=utf8mb3 COLLATE=utf8_bin COMMENT='购物车';
 
 DROP TABLE IF EXISTS `user`;
@@ -242,4 +259,49 @@ CREATE TABLE `user` (
   `avatar` varchar(500) COLLATE utf8_bin DEFAULT NULL COMMENT '头像',
   `create_time` datetime DEFAULT NULL,
   PRIMARY KEY (`id`)
-) ENGINE=InnoDB AUTO_INCREMENT=4 DEFAULT CHARSET=utf8mb3 COLLATE=utf8_bin COMMENT='用户信息';
\ No newline at end of file
+) ENGINE=InnoDB AUTO_INCREMENT=4 DEFAULT CHARSET=utf8mb3 COLLATE=utf8_bin COMMENT='用户信息';
+
+-- 按注册时间范围重算新增用户数
+ALTER TABLE `user`
+ADD KEY `idx_user_create_time` (`create_time`);
+
+DROP TABLE IF EXISTS `daily_business_stats`;
+CREATE TABLE `daily_business_stats` (
+  `stat_date` date NOT NULL COMMENT '统计日期',
+  `order_count` int NOT NULL DEFAULT '0' COMMENT '订单总数',
+  `valid_order_count` int NOT NULL DEFAULT '0' COMMENT '有效订单数',
+  `turnover` decimal(12,2) NOT NULL DEFAULT '0.00' COMMENT '营业额',
+  `new_user_count` int NOT NULL DEFAULT '0' COMMENT '新增用户数',
+  `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`stat_date`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb3 COLLATE=utf8_bin COMMENT='每日营业数据汇总';
+
+DROP TABLE IF EXISTS `daily_dish_sales`;
+CREATE TABLE `daily_dish_sales` (
+  `id` bigint NOT NULL AUTO_INCREMENT COMMENT '主键',
+  `stat_date` date NOT NULL COMMENT '统计日期',
+  `name` varchar(32) COLLATE utf8_bin NOT NULL COMMENT '商品名称',
+  `number` int NOT NULL DEFAULT '0' COMMENT '销量',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `idx_daily_dish_sales_date_name` (`stat_date`,`name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb3 COLLATE=utf8_bin COMMENT='每日商品销量汇总';
+
+-- 根据历史数据初始化汇总表
+INSERT INTO `daily_business_stats` (`stat_date`, `order_count`, `valid_order_count`, `turnover`)
+SELECT date(`order_time`), count(*), count(CASE WHEN `status` = 5 THEN 1 END),
+       coalesce(sum(CASE WHEN `status` = 5 THEN `amount` END), 0)
+FROM `orders`
+GROUP BY date(`order_time`);
+
+INSERT INTO `daily_business_stats` (`stat_date`, `new_user_count`)
+SELECT date(`create_time`), count(*)
+FROM `user`
+WHERE `create_time` IS NOT NULL
+GROUP BY date(`create_time`)
+ON DUPLICATE KEY UPDATE `new_user_count` = VALUES(`new_user_count`);
+
+INSERT INTO `daily_dish_sales` (`stat_date`, `name`, `number`)
+SELECT date(o.`order_time`), od.`name`, sum(od.`number`)
+FROM `orders` o JOIN `order_detail` od ON od.`order_id` = o.`id`
+WHERE o.`status` = 5 AND od.`name` IS NOT NULL
+GROUP BY date(o.`order_time`), od.`name`;
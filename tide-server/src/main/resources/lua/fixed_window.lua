@@ -0,0 +1,18 @@
+-- 固定窗口限流
+-- KEYS[1] 限流key
+-- ARGV[1] 窗口期(秒)  ARGV[2] 限流阈值
+-- 返回 1=允许访问 0=被限流
+-- 只在窗口内第一次计数时设置过期时间，持续有请求时窗口也会按时结束
+local key = KEYS[1]
+local window = tonumber(ARGV[1])
+local limit = tonumber(ARGV[2])
+
+local current = tonumber(redis.call('get', key) or '0')
+if current + 1 > limit then
+    return 0
+end
+current = redis.call('incr', key)
+if current == 1 then
+    redis.call('expire', key, window)
+end
+return 1
@@ -0,0 +1,30 @@
+-- GCRA限流(通用信元速率算法)
+-- KEYS[1] 限流key，只保存理论到达时间TAT(毫秒)
+-- ARGV[1] 窗口期(秒)  ARGV[2] 限流阈值  ARGV[3] 请求令牌数
+-- 返回 1=允许访问 0=被限流
+-- 每个请求把TAT向后推一个发放间隔(窗口期/阈值)，TAT超出当前时间一个窗口期时拒绝，
+-- 效果等同于容量为阈值的令牌桶，但只需要一个字符串key
+local key = KEYS[1]
+local window = tonumber(ARGV[1]) * 1000
+local limit = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+local interval = window / limit
+
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+local now = redis.call('time')
+local timestamp = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000)
+
+local tat = tonumber(redis.call('get', key) or '0')
+if tat < timestamp then
+    tat = timestamp
+end
+
+local new_tat = tat + interval * requested
+if new_tat - timestamp > window then
+    return 0
+end
+
+redis.call('set', key, new_tat, 'px', math.ceil(new_tat - timestamp))
+return 1
@@ -0,0 +1,38 @@
+-- 滑动窗口计数限流
+-- KEYS[1] 限流key，hash结构：start=当前窗口开始时间 cur=当前窗口计数 prev=上一个窗口计数
+-- ARGV[1] 窗口期(秒)  ARGV[2] 限流阈值
+-- 返回 1=允许访问 0=被限流
+-- 按上一个窗口与滑动窗口重叠的比例估算请求数：prev * (1 - 当前窗口已过去的比例) + cur
+local key = KEYS[1]
+local window = tonumber(ARGV[1]) * 1000
+local limit = tonumber(ARGV[2])
+
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+local now = redis.call('time')
+local timestamp = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000)
+local window_start = timestamp - timestamp % window
+
+local values = redis.call('hmget', key, 'start', 'cur', 'prev')
+local start = tonumber(values[1] or '0')
+local cur = tonumber(values[2] or '0')
+local prev = tonumber(values[3] or '0')
+
+if window_start ~= start then
+    if window_start - start == window then
+        prev = cur
+    else
+        prev = 0
+    end
+    cur = 0
+end
+
+local estimated = prev * (1 - (timestamp - window_start) / window) + cur
+if estimated + 1 > limit then
+    return 0
+end
+
+redis.call('hset', key, 'start', window_start, 'cur', cur + 1, 'prev', prev)
+redis.call('pexpire', key, window * 2)
+return 1
@@ -0,0 +1,34 @@
+-- 令牌桶限流
+-- KEYS[1] 限流key
+-- ARGV[1] 令牌桶容量  ARGV[2] 令牌填充速率(每秒)  ARGV[3] 请求令牌数
+-- 返回 1=允许访问 0=被限流
+-- 时间取自Redis的TIME命令，各节点时钟不一致时不会多发或少发令牌
+local key = KEYS[1]
+local capacity = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+-- Redis 5之前脚本默认整体复制，调用TIME这类不确定命令后再写入需要先切换为按效果复制
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+local now = redis.call('time')
+local timestamp = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000)
+
+local last_tokens = tonumber(redis.call('hget', key, 'tokens') or capacity)
+local last_refreshed = tonumber(redis.call('hget', key, 'last_refreshed') or '0')
+
+local elapsed = math.max(0, timestamp - last_refreshed)
+local new_tokens = math.min(capacity, last_tokens + (elapsed / 1000.0) * rate)
+
+local allowed = 0
+if new_tokens >= requested then
+    new_tokens = new_tokens - requested
+    allowed = 1
+end
+
+redis.call('hset', key, 'tokens', new_tokens)
+redis.call('hset', key, 'last_refreshed', timestamp)
+redis.call('expire', key, 3600)
+
+return allowed
@@ -0,0 +1,33 @@
+-- 令牌桶批量租借令牌
+-- KEYS[1] 限流key
+-- ARGV[1] 令牌桶容量  ARGV[2] 令牌填充速率(每秒)  ARGV[3] 本次请求需要的令牌数  ARGV[4] 最多租借的令牌数
+-- 返回实际租借的令牌数，桶中令牌不够本次请求时返回0且不扣减
+local key = KEYS[1]
+local capacity = tonumber(ARGV[1])
+local rate = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+local lease = tonumber(ARGV[4])
+
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+local now = redis.call('time')
+local timestamp = tonumber(now[1]) * 1000 + math.floor(tonumber(now[2]) / 1000)
+
+local last_tokens = tonumber(redis.call('hget', key, 'tokens') or capacity)
+local last_refreshed = tonumber(redis.call('hget', key, 'last_refreshed') or '0')
+
+local elapsed = math.max(0, timestamp - last_refreshed)
+local new_tokens = math.min(capacity, last_tokens + (elapsed / 1000.0) * rate)
+
+local granted = math.min(lease, math.floor(new_tokens))
+if granted < requested then
+    granted = 0
+end
+new_tokens = new_tokens - granted
+
+redis.call('hset', key, 'tokens', new_tokens)
+redis.call('hset', key, 'last_refreshed', timestamp)
+redis.call('expire', key, 3600)
+
+return granted
@@ -0,0 +1,8 @@
+-- 订单号机器id租约续约
+-- KEYS[1] 租约key
+-- ARGV[1] 当前实例标识  ARGV[2] 租约有效期(秒)
+-- 返回 1=续约成功 0=租约已过期或已被其他实例占用
+if redis.call('get', KEYS[1]) == ARGV[1] then
+    return redis.call('expire', KEYS[1], ARGV[2])
+end
+return 0
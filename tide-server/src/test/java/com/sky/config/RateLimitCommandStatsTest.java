@@ -0,0 +1,175 @@
+package com.sky.config;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 统计每种限流类型每次判断在Redis中执行的命令数，与RateLimit#type()中的说明对照
+ * 命令数取自执行前后INFO commandstats的差值，脚本内调用的命令也会计入；
+ * commandstats是整个Redis的统计，需要连接没有其他客户端访问的Redis，
+ * 通过 -Dsky.redis.host、-Dsky.redis.port 指定，连接不上时跳过
+ */
+public class RateLimitCommandStatsTest {
+
+    //每个阶段判断的次数
+    private static final int DECISIONS = 5;
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    private final RateLimitScriptConfiguration scripts = new RateLimitScriptConfiguration();
+
+    private final String keyPrefix = "rate_limit:stats_test:" + UUID.randomUUID() + ":";
+
+    @BeforeAll
+    public static void connect() {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                System.getProperty("sky.redis.host", "localhost"),
+                Integer.parseInt(System.getProperty("sky.redis.port", "6379")));
+        connectionFactory = new LettuceConnectionFactory(configuration);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+        boolean available;
+        try {
+            available = "PONG".equals(redisTemplate.execute((RedisCallback<String>) RedisConnection::ping));
+        } catch (Exception e) {
+            available = false;
+        }
+        assumeTrue(available, "Redis不可用，跳过命令数统计");
+    }
+
+    @AfterAll
+    public static void close() {
+        if (connectionFactory == null) {
+            return;
+        }
+        try {
+            redisTemplate.delete(redisTemplate.keys("rate_limit:stats_test:*"));
+        } catch (Exception e) {
+            //清理失败不影响统计结果，key都设置了过期时间
+        }
+        connectionFactory.destroy();
+    }
+
+    /**
+     * 固定窗口：放行 GET、INCR，窗口第一次计数时加EXPIRE；拒绝只有GET
+     */
+    @Test
+    public void fixedWindow() {
+        RedisScript<Long> script = scripts.fixedWindowScript();
+        String key = key("fixed");
+        Supplier<Long> decision = () -> redisTemplate.execute(script, Collections.singletonList(key),
+                "60", String.valueOf(DECISIONS));
+
+        assertDecisions(script, decision, 1L, 2 * DECISIONS + 1);
+        assertDecisions(script, decision, 0L, DECISIONS);
+    }
+
+    /**
+     * 令牌桶：放行和拒绝都是 TIME、2次HGET、2次HSET、EXPIRE
+     */
+    @Test
+    public void tokenBucket() {
+        RedisScript<Long> script = scripts.tokenBucketScript();
+        String key = key("bucket");
+        //每100秒补充一个令牌，测试期间补充的令牌不够一次请求
+        Supplier<Long> decision = () -> redisTemplate.execute(script, Collections.singletonList(key),
+                String.valueOf(DECISIONS), "0.01", "1");
+
+        assertDecisions(script, decision, 1L, 6 * DECISIONS);
+        assertDecisions(script, decision, 0L, 6 * DECISIONS);
+    }
+
+    /**
+     * 滑动窗口计数：放行 TIME、HMGET、HSET、PEXPIRE；拒绝只有 TIME、HMGET
+     */
+    @Test
+    public void slidingWindow() {
+        RedisScript<Long> script = scripts.slidingWindowScript();
+        String key = key("sliding");
+        Supplier<Long> decision = () -> redisTemplate.execute(script, Collections.singletonList(key),
+                "60", String.valueOf(DECISIONS));
+
+        assertDecisions(script, decision, 1L, 4 * DECISIONS);
+        assertDecisions(script, decision, 0L, 2 * DECISIONS);
+    }
+
+    /**
+     * GCRA：放行 TIME、GET、SET；拒绝只有 TIME、GET
+     */
+    @Test
+    public void gcra() {
+        RedisScript<Long> script = scripts.gcraScript();
+        String key = key("gcra");
+        Supplier<Long> decision = () -> redisTemplate.execute(script, Collections.singletonList(key),
+                "60", String.valueOf(DECISIONS), "1");
+
+        assertDecisions(script, decision, 1L, 3 * DECISIONS);
+        assertDecisions(script, decision, 0L, 2 * DECISIONS);
+    }
+
+    /**
+     * 执行若干次判断，检查每次的结果、脚本内执行的命令总数，以及每次判断只有一次EVALSHA
+     */
+    private void assertDecisions(RedisScript<Long> script, Supplier<Long> decision,
+                                 long expectedResult, long expectedCommands) {
+        //先执行一次把脚本加载到Redis，统计时不会出现NOSCRIPT后的EVAL
+        redisTemplate.execute(script, Collections.singletonList(key("warmup:" + script.getSha1())), "60", "1000000", "1");
+
+        Map<String, Long> before = commandCalls();
+        for (int i = 0; i < DECISIONS; i++) {
+            assertEquals(expectedResult, decision.get());
+        }
+        Map<String, Long> after = commandCalls();
+
+        long scriptCalls = 0;
+        long commands = 0;
+        for (Map.Entry<String, Long> entry : after.entrySet()) {
+            long delta = entry.getValue() - before.getOrDefault(entry.getKey(), 0L);
+            String command = entry.getKey();
+            if ("evalsha".equals(command) || "eval".equals(command)) {
+                scriptCalls += delta;
+            } else if (!"info".equals(command)) {
+                commands += delta;
+            }
+        }
+        assertEquals(DECISIONS, scriptCalls, "每次判断应只有一次网络往返");
+        assertEquals(expectedCommands, commands, "脚本内执行的Redis命令数");
+    }
+
+    private Map<String, Long> commandCalls() {
+        Properties stats = redisTemplate.execute((RedisCallback<Properties>) connection ->
+                connection.serverCommands().info("commandstats"));
+        Map<String, Long> calls = new HashMap<>();
+        for (String name : stats.stringPropertyNames()) {
+            //格式为 cmdstat_get:calls=10,usec=20,...
+            String value = stats.getProperty(name);
+            int start = value.indexOf("calls=") + "calls=".length();
+            int end = value.indexOf(',', start);
+            calls.put(name.substring("cmdstat_".length()).toLowerCase(),
+                    Long.parseLong(end < 0 ? value.substring(start) : value.substring(start, end)));
+        }
+        return calls;
+    }
+
+    private String key(String type) {
+        return keyPrefix + type;
+    }
+}